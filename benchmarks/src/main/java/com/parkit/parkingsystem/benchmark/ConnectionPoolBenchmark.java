@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry + exit round trip through the DAOs, with pooled connections versus
+ * one physical connection per DAO call. Throughput is in vehicles per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark {
+
+    @Param({"pooled", "perCall"})
+    public String connectionMode;
+
+    private EmbeddedDataBase embeddedDataBase;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private long plateCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        embeddedDataBase = new EmbeddedDataBase("pool");
+        embeddedDataBase.createSchema(100, 100);
+        DataBaseConfig dataBaseConfig = "pooled".equals(connectionMode)
+                ? new DataBaseConfig(embeddedDataBase.getUrl(), EmbeddedDataBase.USER, EmbeddedDataBase.PASSWORD)
+                : new PerCallDataBaseConfig(embeddedDataBase.getUrl());
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DataBaseConfig.closeConnectionPools();
+        embeddedDataBase.stop();
+    }
+
+    @Benchmark
+    public double entryAndExit() {
+        String vehicleRegNumber = "B" + (plateCounter++ % 1000000);
+
+        // entry: same DAO calls as ParkingService.processIncomingVehicle
+        ParkingSpot parkingSpot = new ParkingSpot(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR), ParkingType.CAR, false);
+        ticketDAO.getNbTicket(vehicleRegNumber);
+        parkingSpotDAO.updateParking(parkingSpot);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        ticketDAO.saveTicket(ticket);
+
+        // exit: same DAO calls as ParkingService.processExitingVehicle
+        Ticket openTicket = ticketDAO.getTicket(vehicleRegNumber);
+        openTicket.setOutTime(new Date());
+        openTicket.setPrice(1.5);
+        ticketDAO.updateTicket(openTicket);
+        openTicket.getParkingSpot().setAvailable(true);
+        parkingSpotDAO.updateParking(openTicket.getParkingSpot());
+        return openTicket.getPrice();
+    }
+
+    /**
+     * The connection handling in place before pooling: connect on every DAO call, close afterwards.
+     */
+    static class PerCallDataBaseConfig extends DataBaseConfig {
+
+        PerCallDataBaseConfig(String url) {
+            super(url, EmbeddedDataBase.USER, EmbeddedDataBase.PASSWORD);
+        }
+
+        @Override
+        public Connection getConnection() throws ClassNotFoundException, SQLException {
+            return createConnection();
+        }
+
+        @Override
+        public void closeConnection(Connection con) {
+            if (con != null) {
+                try {
+                    con.close();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
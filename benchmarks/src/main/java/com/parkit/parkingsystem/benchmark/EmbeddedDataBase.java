@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.benchmark;
+
+import org.h2.tools.Server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * In-process H2 database in MySQL mode, served over a local TCP socket so that
+ * connecting still costs a real network handshake, as it does against MySQL.
+ */
+public class EmbeddedDataBase {
+
+    public static final String USER = "sa";
+    public static final String PASSWORD = "";
+
+    private final Server server;
+    private final String url;
+
+    public EmbeddedDataBase(String name) throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "9093", "-ifNotExists").start();
+        url = "jdbc:h2:tcp://localhost:9093/mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, USER, PASSWORD);
+    }
+
+    public void createSchema(int nbCarSpots, int nbBikeSpots) throws SQLException {
+        try (Connection con = connect(); Statement st = con.createStatement()) {
+            st.execute("drop table if exists ticket");
+            st.execute("drop table if exists vehicle_visit");
+            st.execute("drop table if exists parking");
+            st.execute("create table parking(PARKING_NUMBER int PRIMARY KEY, AVAILABLE bool NOT NULL, TYPE varchar(10) NOT NULL)");
+            st.execute("create table ticket(ID int PRIMARY KEY AUTO_INCREMENT, PARKING_NUMBER int NOT NULL, "
+                    + "VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME, "
+                    + "FOREIGN KEY (PARKING_NUMBER) REFERENCES parking(PARKING_NUMBER))");
+            st.execute("create table vehicle_visit(VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY, NB_VISITS int NOT NULL)");
+            try (PreparedStatement ps = con.prepareStatement("insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(?,true,?)")) {
+                for (int i = 1; i <= nbCarSpots + nbBikeSpots; i++) {
+                    ps.setInt(1, i);
+                    ps.setString(2, i <= nbCarSpots ? "CAR" : "BIKE");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Fills the ticket table with closed tickets spread over nbVehicles plates ("V0", "V1", ...),
+     * the matching visit counters, and one open ticket on spot 1 for each of the first nbOpenTickets plates.
+     */
+    public void insertTickets(int nbClosedTickets, int nbVehicles, int nbOpenTickets) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (Connection con = connect()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(
+                    "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(1,?,?,?,?)")) {
+                for (int i = 0; i < nbClosedTickets + nbOpenTickets; i++) {
+                    boolean open = i >= nbClosedTickets;
+                    long inTime = now - (open ? 60 * 60 * 1000L : (nbClosedTickets - i) * 60 * 1000L + 2 * 60 * 60 * 1000L);
+                    ps.setString(1, "V" + (open ? i - nbClosedTickets : i % nbVehicles));
+                    ps.setDouble(2, open ? 0 : 1.5);
+                    ps.setTimestamp(3, new Timestamp(inTime));
+                    ps.setTimestamp(4, open ? null : new Timestamp(inTime + 60 * 60 * 1000L));
+                    ps.addBatch();
+                    if (i % 1000 == 999) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            try (Statement st = con.createStatement()) {
+                st.execute("insert into vehicle_visit(VEHICLE_REG_NUMBER, NB_VISITS) "
+                        + "select VEHICLE_REG_NUMBER, count(*) from ticket where OUT_TIME is not null group by VEHICLE_REG_NUMBER");
+            }
+            con.commit();
+        }
+    }
+
+    public void stop() {
+        server.stop();
+    }
+}
@@ -0,0 +1,92 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of pricing one ticket, over parking durations spread from a few minutes to three days.
+ * Run with {@code -prof gc}: the epoch-millis overload is expected to allocate 0 bytes per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FareCalculatorBenchmark {
+
+    private static final int NB_TICKETS = 1024;
+
+    @Param({"CAR", "BIKE"})
+    public ParkingType parkingType;
+
+    @Param({"false", "true"})
+    public boolean discount;
+
+    /** builtIn is a flat hourly rate; bandsAndCap adds time-of-day bands and a daily cap. */
+    @Param({"builtIn", "bandsAndCap"})
+    public String tariff;
+
+    private FareCalculatorService fareCalculatorService;
+    private Ticket[] tickets;
+    private long[] inMillis;
+    private long[] outMillis;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties rules = new Properties();
+        if ("bandsAndCap".equals(tariff)) {
+            rules.setProperty("default." + parkingType + ".bands", "MON-FRI 08:00-19:00@2.5; MON-FRI 19:00-08:00@0.5; SAT-SUN 10:00-18:00@1.5");
+            rules.setProperty("default." + parkingType + ".dailyCap", "15");
+        }
+        fareCalculatorService = new FareCalculatorService(new TariffEngine(rules), TariffEngine.DEFAULT_LOT);
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        tickets = new Ticket[NB_TICKETS];
+        inMillis = new long[NB_TICKETS];
+        outMillis = new long[NB_TICKETS];
+        for (int i = 0; i < NB_TICKETS; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+            ticket.setInTime(new Date(now - random.nextInt(72 * 60) * 60 * 1000L));
+            ticket.setOutTime(new Date(now));
+            tickets[i] = ticket;
+            inMillis[i] = ticket.getInTime().getTime();
+            outMillis[i] = now;
+        }
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        Ticket ticket = tickets[next++ & (NB_TICKETS - 1)];
+        fareCalculatorService.calculateFare(ticket, discount);
+        return ticket.getPrice();
+    }
+
+    @Benchmark
+    public double calculateFareFromEpochMillis() {
+        int i = next++ & (NB_TICKETS - 1);
+        return fareCalculatorService.calculateFare(inMillis[i], outMillis[i], parkingType, discount);
+    }
+}
@@ -0,0 +1,47 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Parking table kept in memory, to measure ParkingService without any JDBC cost.
+ * Single-threaded, like the benchmarks using it.
+ */
+class InMemoryParkingSpotDAO extends ParkingSpotDAO {
+
+    private final Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+
+    InMemoryParkingSpotDAO(int nbCarSpots, int nbBikeSpots) {
+        freeSpots.put(ParkingType.CAR, new BitSet());
+        freeSpots.put(ParkingType.BIKE, new BitSet());
+        freeSpots.get(ParkingType.CAR).set(1, nbCarSpots + 1);
+        freeSpots.get(ParkingType.BIKE).set(nbCarSpots + 1, nbCarSpots + nbBikeSpots + 1);
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        int parkingNumber = freeSpots.get(parkingType).nextSetBit(0);
+        return parkingNumber < 0 ? 0 : parkingNumber;
+    }
+
+    @Override
+    public int claimNextAvailableSlot(UnitOfWork unitOfWork, ParkingType parkingType) {
+        int parkingNumber = getNextAvailableSlot(parkingType);
+        if (parkingNumber > 0) {
+            freeSpots.get(parkingType).clear(parkingNumber);
+        }
+        return parkingNumber;
+    }
+
+    @Override
+    public boolean updateParking(UnitOfWork unitOfWork, ParkingSpot parkingSpot) {
+        freeSpots.get(parkingSpot.getParkingType()).set(parkingSpot.getId(), parkingSpot.isAvailable());
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ticket table kept in memory, to measure ParkingService without any JDBC cost.
+ * Single-threaded, like the benchmarks using it.
+ */
+class InMemoryTicketDAO extends TicketDAO {
+
+    private final Map<String, Ticket> openTickets = new HashMap<>();
+    private final Map<String, Integer> nbVisits = new HashMap<>();
+
+    InMemoryTicketDAO() {
+        dataBaseConfig = new NoOpDataBaseConfig();
+    }
+
+    @Override
+    public boolean saveTicket(UnitOfWork unitOfWork, Ticket ticket) {
+        openTickets.put(ticket.getVehicleRegNumber(), ticket);
+        return true;
+    }
+
+    @Override
+    public Ticket getTicket(UnitOfWork unitOfWork, String vehicleRegNumber) {
+        return openTickets.get(vehicleRegNumber);
+    }
+
+    @Override
+    public int getNbTicket(UnitOfWork unitOfWork, String vehicleRegNumber) {
+        Integer count = nbVisits.get(vehicleRegNumber);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public boolean updateTicket(UnitOfWork unitOfWork, Ticket ticket) {
+        openTickets.remove(ticket.getVehicleRegNumber());
+        nbVisits.merge(ticket.getVehicleRegNumber(), 1, Integer::sum);
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry + exit round trip through ParkingService and the real DAOs, once with the former logging
+ * (synchronous, caller location, lifecycle of every connection, statement and result set written)
+ * and once with the shipped asynchronous configuration. Each runs in its own JVM since the logging
+ * configuration is fixed at startup. Throughput is in vehicles per second; the logs go to target/.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private EmbeddedDataBase embeddedDataBase;
+    private ParkingService parkingService;
+    private long plateCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        embeddedDataBase = new EmbeddedDataBase("logging");
+        embeddedDataBase.createSchema(100, 100);
+        DataBaseConfig dataBaseConfig = new DataBaseConfig(embeddedDataBase.getUrl(), EmbeddedDataBase.USER, EmbeddedDataBase.PASSWORD);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadSpotIndex();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DataBaseConfig.closeConnectionPools();
+        embeddedDataBase.stop();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {
+            "-DLog4jContextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector",
+            "-Dlog4j.configurationFile=log4j2-sync.properties"})
+    public double synchronousLifecycleLogging() throws Exception {
+        return entryAndExit();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-async.properties")
+    public double asynchronousLogging() throws Exception {
+        return entryAndExit();
+    }
+
+    private double entryAndExit() throws Exception {
+        String vehicleRegNumber = "L" + (plateCounter++ % 1000);
+        parkingService.enterVehicle(ParkingType.CAR, vehicleRegNumber, new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        return parkingService.exitVehicle(vehicleRegNumber).getFare();
+    }
+}
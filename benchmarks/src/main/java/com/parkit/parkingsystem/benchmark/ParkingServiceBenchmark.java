@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry + exit round trip through ParkingService, with in-memory DAOs to isolate the service
+ * logic and with the real DAOs on the embedded database. Throughput is in vehicles per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParkingServiceBenchmark {
+
+    @Param({"inMemory", "embeddedDb"})
+    public String dao;
+
+    private EmbeddedDataBase embeddedDataBase;
+    private ParkingService parkingService;
+    private long plateCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        ParkingSpotDAO parkingSpotDAO;
+        TicketDAO ticketDAO;
+        if ("inMemory".equals(dao)) {
+            parkingSpotDAO = new InMemoryParkingSpotDAO(100, 100);
+            ticketDAO = new InMemoryTicketDAO();
+        } else {
+            embeddedDataBase = new EmbeddedDataBase("service");
+            embeddedDataBase.createSchema(100, 100);
+            DataBaseConfig dataBaseConfig = new DataBaseConfig(embeddedDataBase.getUrl(), EmbeddedDataBase.USER, EmbeddedDataBase.PASSWORD);
+            parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+            parkingSpotDAO.loadSpotIndex();
+            ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseConfig;
+        }
+        parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DataBaseConfig.closeConnectionPools();
+        if (embeddedDataBase != null) {
+            embeddedDataBase.stop();
+        }
+    }
+
+    @Benchmark
+    public double entryAndExit() throws Exception {
+        // a thousand regulars, so most exits get the recurring discount
+        String vehicleRegNumber = "S" + (plateCounter++ % 1000);
+        parkingService.enterVehicle(ParkingType.CAR, vehicleRegNumber, new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        return parkingService.exitVehicle(vehicleRegNumber).getFare();
+    }
+}
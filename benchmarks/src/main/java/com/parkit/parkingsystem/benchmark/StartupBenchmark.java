@@ -0,0 +1,95 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.LotSnapshot;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the spot index and the open tickets of a lot at startup, from the parking and ticket tables
+ * and from a {@link LotSnapshot}. The database has half of the spots occupied and a history of closed
+ * tickets, as a lot that has been running for a while.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"1000", "10000"})
+    public int nbSpots;
+
+    private EmbeddedDataBase embeddedDataBase;
+    private DataBaseConfig dataBaseConfig;
+    private Path snapshotFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        embeddedDataBase = new EmbeddedDataBase("startup");
+        embeddedDataBase.createSchema(nbSpots * 4 / 5, nbSpots / 5);
+        embeddedDataBase.insertTickets(100000, 20000, nbSpots / 2);
+        dataBaseConfig = new DataBaseConfig(embeddedDataBase.getUrl(), EmbeddedDataBase.USER, EmbeddedDataBase.PASSWORD);
+        ParkingSpotDAO parkingSpotDAO = parkingSpotDAO();
+        TicketDAO ticketDAO = ticketDAO();
+        if (!parkingSpotDAO.loadSpotIndex() || !ticketDAO.loadOpenTickets()) {
+            throw new IllegalStateException("Unable to load the lot");
+        }
+        snapshotFile = Files.createTempFile("lot", ".snapshot");
+        LotSnapshot.write(snapshotFile, 0, parkingSpotDAO.getIndexedParkingSpots(), ticketDAO.getOpenTicketsInMemory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        DataBaseConfig.closeConnectionPools();
+        embeddedDataBase.stop();
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    private ParkingSpotDAO parkingSpotDAO() {
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        return parkingSpotDAO;
+    }
+
+    private TicketDAO ticketDAO() {
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        return ticketDAO;
+    }
+
+    @Benchmark
+    public TicketDAO fromTables() {
+        parkingSpotDAO().loadSpotIndex();
+        TicketDAO ticketDAO = ticketDAO();
+        ticketDAO.loadOpenTickets();
+        return ticketDAO;
+    }
+
+    @Benchmark
+    public TicketDAO fromSnapshot() throws Exception {
+        LotSnapshot snapshot = LotSnapshot.read(snapshotFile);
+        parkingSpotDAO().loadSpotIndex(snapshot.getParkingSpots());
+        TicketDAO ticketDAO = ticketDAO();
+        ticketDAO.loadOpenTickets(snapshot.getOpenTickets());
+        return ticketDAO;
+    }
+}
@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.RecurringVehicleCache;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TicketDAO lookups against ticket tables of increasing size, on the bare baseline schema and after
+ * the schema migrations added the ticket lookup indexes. The recurring vehicle cache is disabled so
+ * that every getNbTicket call reaches the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TicketLookupBenchmark {
+
+    private static final int NB_VEHICLES = 50000;
+    private static final int NB_OPEN_TICKETS = 1000;
+
+    @Param({"10000", "100000", "1000000", "3000000"})
+    public int nbTickets;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private EmbeddedDataBase embeddedDataBase;
+    private TicketDAO ticketDAO;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        embeddedDataBase = new EmbeddedDataBase("lookup");
+        embeddedDataBase.createSchema(100, 100);
+        embeddedDataBase.insertTickets(nbTickets, NB_VEHICLES, NB_OPEN_TICKETS);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = new DataBaseConfig(embeddedDataBase.getUrl(), EmbeddedDataBase.USER, EmbeddedDataBase.PASSWORD);
+        if (indexed && new SchemaMigrator(ticketDAO.dataBaseConfig).migrate() < 0) {
+            throw new IllegalStateException("Schema migration failed");
+        }
+        ticketDAO.recurringVehicleCache = new RecurringVehicleCache(0, -1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DataBaseConfig.closeConnectionPools();
+        embeddedDataBase.stop();
+    }
+
+    @Benchmark
+    public Ticket getOpenTicket() {
+        return ticketDAO.getTicket("V" + (next++ % NB_OPEN_TICKETS));
+    }
+
+    @Benchmark
+    public Ticket getLastTicket() {
+        return ticketDAO.getTicketWithOutTime("V" + (next++ % NB_VEHICLES));
+    }
+
+    @Benchmark
+    public int getNbTicket() {
+        return ticketDAO.getNbTicket("V" + (next++ % NB_VEHICLES));
+    }
+}
@@ -0,0 +1,137 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketStore;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A day of tickets held as Ticket objects versus a TicketStore: building them, then pricing them all.
+ * Run with {@code -prof gc}: gc.alloc.rate.norm of the build benchmarks divided by nbTickets is the heap
+ * per ticket, since the store is sized up front and both keep everything they allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TicketStoreBenchmark {
+
+    private static final int NB_VEHICLES = 20000;
+    private static final int NB_SPOTS = 500;
+
+    @Param({"100000"})
+    public int nbTickets;
+
+    private FareCalculatorService fareCalculatorService;
+    private int[] parkingNumbers;
+    private long[] inMillis;
+    private long[] outMillis;
+    private List<Ticket> tickets;
+    private TicketStore ticketStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fareCalculatorService = new FareCalculatorService(new TariffEngine(), TariffEngine.DEFAULT_LOT);
+        Random random = new Random(42);
+        long dayStart = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
+        parkingNumbers = new int[nbTickets];
+        inMillis = new long[nbTickets];
+        outMillis = new long[nbTickets];
+        for (int i = 0; i < nbTickets; i++) {
+            parkingNumbers[i] = 1 + random.nextInt(NB_SPOTS);
+            inMillis[i] = dayStart + random.nextInt(20 * 60) * 60 * 1000L;
+            outMillis[i] = inMillis[i] + (1 + random.nextInt(4 * 60)) * 60 * 1000L;
+        }
+        tickets = buildTickets();
+        ticketStore = buildTicketStore();
+    }
+
+    private static ParkingType typeOf(int parkingNumber) {
+        return parkingNumber % 5 == 0 ? ParkingType.BIKE : ParkingType.CAR;
+    }
+
+    // plates are built per ticket, as a JDBC driver returns a new String for every row
+    private static String plate(int i) {
+        return "AB-" + (i % NB_VEHICLES);
+    }
+
+    @Benchmark
+    public List<Ticket> buildTickets() {
+        List<Ticket> list = new ArrayList<>(nbTickets);
+        for (int i = 0; i < nbTickets; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setId(i + 1);
+            ticket.setParkingSpot(new ParkingSpot(parkingNumbers[i], typeOf(parkingNumbers[i]), false));
+            ticket.setVehicleRegNumber(plate(i));
+            ticket.setInTime(new Date(inMillis[i]));
+            ticket.setOutTime(new Date(outMillis[i]));
+            ticket.setNbPreviousTickets(i / NB_VEHICLES);
+            list.add(ticket);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public TicketStore buildTicketStore() {
+        TicketStore store = new TicketStore(nbTickets);
+        for (int i = 0; i < nbTickets; i++) {
+            store.add(i + 1, parkingNumbers[i], typeOf(parkingNumbers[i]), plate(i), 0, inMillis[i], outMillis[i], i / NB_VEHICLES);
+        }
+        return store;
+    }
+
+    @Benchmark
+    public double priceTickets() {
+        double total = 0;
+        for (Ticket ticket : tickets) {
+            fareCalculatorService.calculateFare(ticket, ticket.getNbPreviousTickets() > 0);
+            total += ticket.getPrice();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double priceTicketStoreViews() {
+        double total = 0;
+        TicketStore.TicketView view = ticketStore.view(0);
+        for (int row = 0; row < ticketStore.size(); row++) {
+            fareCalculatorService.calculateFare(view.moveTo(row), view.getNbPreviousTickets() > 0);
+            total += view.getPrice();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double priceTicketStoreColumns() {
+        double total = 0;
+        for (int row = 0; row < ticketStore.size(); row++) {
+            double price = fareCalculatorService.calculateFare(ticketStore.getInMillis(row), ticketStore.getOutMillis(row),
+                    ticketStore.getParkingType(row), ticketStore.getNbPreviousTickets(row) > 0);
+            ticketStore.setPrice(row, price);
+            total += price;
+        }
+        return total;
+    }
+}
@@ -1,13 +1,122 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.service.ArchiveJob;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.GateEventReplayer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.JournaledParkingService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ReportService;
+import com.parkit.parkingsystem.service.RepricingJob;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
     public static void main(String args[]){
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        Metrics.startFromSystemProperties();
+        int status = 0;
+        try {
+            if (Boolean.parseBoolean(System.getProperty("parkit.db.migrate", "true"))
+                    && new SchemaMigrator(new DataBaseConfig()).migrate() < 0) {
+                // nothing may run on a half-migrated schema
+                logger.error("Schema migration failed, the application is not started");
+                status = 1;
+            } else if (args.length == 2 && "--replay".equals(args[0])) {
+                replay(args[1]);
+            } else if (args.length == 4 && "--report".equals(args[0])) {
+                report(LocalDate.parse(args[1]), LocalDate.parse(args[2]), Paths.get(args[3]));
+            } else if (args.length == 1 && "--archive".equals(args[0])) {
+                archive();
+            } else if (args.length >= 1 && "--reprice".equals(args[0])) {
+                reprice(args.length == 3 ? Integer.parseInt(args[1]) : 1, args.length == 3 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE);
+            } else {
+                InteractiveShell.loadInterface();
+            }
+        } finally {
+            DataBaseConfig.closeConnectionPools();
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    private static void replay(String file) {
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        TicketDAO ticketDAO = new TicketDAO();
+        ParkingService parkingService = null;
+        try {
+            if (JournaledParkingService.isEnabled()) {
+                parkingService = JournaledParkingService.start(null, parkingSpotDAO, ticketDAO);
+            } else {
+                parkingSpotDAO.loadSpotIndex();
+                if (InteractiveShell.isOpenTicketStoreEnabled()) {
+                    ticketDAO.loadOpenTickets();
+                }
+                parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+            }
+            GateEventReplayer.Report report = new GateEventReplayer(parkingService, parkingSpotDAO).replay(Paths.get(file));
+            System.out.println(report);
+            System.out.println(Metrics.format(Metrics.snapshotTimers()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Replay of " + file + " interrupted", e);
+        } catch (Exception e) {
+            logger.error("Unable to replay " + file, e);
+        } finally {
+            if (parkingService instanceof JournaledParkingService) {
+                try {
+                    ((JournaledParkingService) parkingService).close();
+                } catch (IOException e) {
+                    logger.error("Unable to close the ticket journal", e);
+                }
+            }
+        }
+    }
+
+    private static void report(LocalDate from, LocalDate to, Path directory) {
+        ZoneId zoneId = ZoneId.systemDefault();
+        ReportService reportService = new ReportService(new TicketDAO(), new ParkingSpotDAO());
+        try {
+            ReportService.Report report = reportService.buildReport(from.atStartOfDay(zoneId).toInstant().toEpochMilli(),
+                    to.atStartOfDay(zoneId).toInstant().toEpochMilli());
+            report.exportCsv(directory, zoneId);
+            System.out.println("Report of " + report.getNbTickets() + " tickets written to " + directory.toAbsolutePath());
+        } catch (Exception e) {
+            logger.error("Unable to build the report", e);
+        }
+    }
+
+    private static void archive() {
+        try {
+            System.out.println(ArchiveJob.fromSystemProperties(new TicketDAO()).run());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Archival interrupted, run it again to resume from the checkpoint", e);
+        } catch (Exception e) {
+            logger.error("Archival stopped, run it again to resume from the checkpoint", e);
+        }
+    }
+
+    private static void reprice(int fromId, int toId) {
+        RepricingJob repricingJob = new RepricingJob(new TicketDAO(), new FareCalculatorService(),
+                Paths.get(System.getProperty("parkit.reprice.checkpoint", "reprice.checkpoint")));
+        try {
+            System.out.println(repricingJob.run(fromId, toId));
+        } catch (Exception e) {
+            logger.error("Repricing stopped, run it again to resume from the checkpoint", e);
+        }
     }
 }
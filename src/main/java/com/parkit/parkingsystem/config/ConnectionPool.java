@@ -0,0 +1,369 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of physical JDBC connections.
+ * Connections are validated on borrow, evicted after staying idle too long,
+ * and reported when a caller keeps one borrowed past the leak threshold, with the current stack of the
+ * thread holding it. The stack of the borrow itself is only captured when borrow sites are recorded,
+ * since filling a stack trace on every borrow is costly.
+ * Each connection keeps its prepared statements in an LRU cache keyed by SQL,
+ * so a statement is parsed once per connection instead of once per call.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    /** A connection used more recently than this is handed out without a validation round trip. */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private static final LatencyHistogram BORROW_TIMER = Metrics.timer("pool.borrow");
+    private static final LongAdder BORROW_FAILURES = Metrics.counter("pool.borrowFailures");
+
+    public interface ConnectionFactory {
+        Connection create() throws ClassNotFoundException, SQLException;
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final long leakDetectionThresholdMillis;
+    private final int statementCacheSize;
+    private final boolean recordBorrowSites;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Map<Connection, PooledConnection> borrowed = new ConcurrentHashMap<>();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionFactory connectionFactory, int maxSize, long maxWaitMillis,
+                          long idleTimeoutMillis, int validationTimeoutSeconds, long leakDetectionThresholdMillis,
+                          int statementCacheSize) {
+        this(connectionFactory, maxSize, maxWaitMillis, idleTimeoutMillis, validationTimeoutSeconds,
+                leakDetectionThresholdMillis, statementCacheSize, false);
+    }
+
+    public ConnectionPool(ConnectionFactory connectionFactory, int maxSize, long maxWaitMillis,
+                          long idleTimeoutMillis, int validationTimeoutSeconds, long leakDetectionThresholdMillis,
+                          int statementCacheSize, boolean recordBorrowSites) {
+        this.connectionFactory = connectionFactory;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.recordBorrowSites = recordBorrowSites;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, leakDetectionThresholdMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands out a connection, waiting at most maxWaitMillis for one to be free. The wait is recorded in the
+     * {@code pool.borrow} timer and failures in the {@code pool.borrowFailures} counter.
+     */
+    public Connection borrow() throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        try {
+            return acquire();
+        } catch (ClassNotFoundException | SQLException | RuntimeException e) {
+            BORROW_FAILURES.increment();
+            throw e;
+        } finally {
+            BORROW_TIMER.recordSince(start);
+        }
+    }
+
+    private Connection acquire() throws ClassNotFoundException, SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "Timed out after " + maxWaitMillis + "ms waiting for a DB connection (max pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a DB connection", e);
+        }
+        try {
+            PooledConnection pooled = takeValidIdleConnection();
+            if (pooled == null) {
+                pooled = new PooledConnection(connectionFactory.create(), statementCacheSize);
+                createdCount.incrementAndGet();
+            }
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrower = Thread.currentThread();
+            pooled.borrowSite = recordBorrowSites && leakDetectionThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.put(pooled.connection, pooled);
+            return pooled.connection;
+        } catch (ClassNotFoundException | SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool.
+     * @return false if the connection was not borrowed from this pool
+     */
+    public boolean release(Connection connection) {
+        PooledConnection pooled = borrowed.remove(connection);
+        if (pooled == null) {
+            return false;
+        }
+        try {
+            if (closed || connection.isClosed()) {
+                discard(pooled);
+                return true;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            pooled.lastUsedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.error("Error while resetting pooled connection, discarding it", e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cached statement for this SQL when the connection comes from the pool,
+     * or a new statement otherwise.
+     */
+    public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        return prepareStatement(connection, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Same as {@link #prepareStatement(Connection, String)}, with the generated keys flag of
+     * {@link Connection#prepareStatement(String, int)}. Statements returning generated keys are cached apart.
+     */
+    public PreparedStatement prepareStatement(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+        PooledConnection pooled = borrowed.get(connection);
+        if (pooled == null || statementCacheSize <= 0) {
+            return newStatement(connection, sql, autoGeneratedKeys);
+        }
+        Map<String, PreparedStatement> statements = (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS)
+                ? pooled.keyStatements : pooled.statements;
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null) {
+            statementCacheHits.increment();
+            return ps;
+        }
+        statementCacheMisses.increment();
+        ps = newStatement(connection, sql, autoGeneratedKeys);
+        statements.put(sql, ps);
+        pooled.cachedStatements.add(ps);
+        return ps;
+    }
+
+    private static PreparedStatement newStatement(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+        return (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS)
+                ? connection.prepareStatement(sql, autoGeneratedKeys)
+                : connection.prepareStatement(sql);
+    }
+
+    /**
+     * Hands a statement back after use. Cached statements stay open with their parameters cleared.
+     * @return false if the statement is not cached and must be closed by the caller
+     */
+    public boolean releaseStatement(PreparedStatement ps) throws SQLException {
+        PooledConnection pooled = borrowed.get(ps.getConnection());
+        if (pooled == null || !pooled.cachedStatements.contains(ps)) {
+            return false;
+        }
+        ps.clearParameters();
+        return true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean owns(Connection connection) {
+        return connection != null && borrowed.containsKey(connection);
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getStatementCacheHitCount() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMissCount() {
+        return statementCacheMisses.sum();
+    }
+
+    public long getStatementCacheEvictionCount() {
+        return statementCacheEvictions.sum();
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection takeValidIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - pooled.lastUsedAt;
+            if (idleFor > idleTimeoutMillis) {
+                discard(pooled);
+            } else if (idleFor <= VALIDATION_BYPASS_MILLIS || isValid(pooled)) {
+                return pooled;
+            } else {
+                logger.warn("Discarding pooled connection that failed validation");
+                discard(pooled);
+            }
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> idleIterator = idle.descendingIterator();
+        while (idleIterator.hasNext()) {
+            PooledConnection pooled = idleIterator.next();
+            if (now - pooled.lastUsedAt > idleTimeoutMillis && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+        if (leakDetectionThresholdMillis > 0) {
+            for (PooledConnection pooled : borrowed.values()) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionThresholdMillis) {
+                    pooled.leakReported = true;
+                    logger.warn("Possible connection leak: connection held for " + (now - pooled.borrowedAt) + "ms", leakSite(pooled));
+                }
+            }
+        }
+    }
+
+    private static Throwable leakSite(PooledConnection pooled) {
+        if (pooled.borrowSite != null) {
+            return pooled.borrowSite;
+        }
+        Thread borrower = pooled.borrower;
+        Throwable site = new Throwable("Connection held by thread " + borrower.getName() + ", now at");
+        site.setStackTrace(borrower.getStackTrace());
+        return site;
+    }
+
+    private void discard(PooledConnection pooled) {
+        try {
+            pooled.connection.close();
+            logger.debug("Closing DB connection");
+        } catch (SQLException e) {
+            logger.error("Error while closing connection", e);
+        }
+    }
+
+    private class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        // statements returning generated keys, apart so that the SQL alone is the key of both caches
+        private final Map<String, PreparedStatement> keyStatements;
+        // the values of both caches, looked up by identity when a statement is released
+        private final Set<PreparedStatement> cachedStatements = Collections.newSetFromMap(new IdentityHashMap<>());
+        private volatile long lastUsedAt = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile Thread borrower;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements = newStatementCache(statementCacheSize);
+            this.keyStatements = newStatementCache(statementCacheSize);
+        }
+
+        private Map<String, PreparedStatement> newStatementCache(final int statementCacheSize) {
+            return new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    statementCacheEvictions.increment();
+                    cachedStatements.remove(eldest.getValue());
+                    try {
+                        eldest.getValue().close();
+                    } catch (SQLException e) {
+                        logger.error("Error while closing evicted prepared statement", e);
+                    }
+                    return true;
+                }
+            };
+        }
+    }
+}
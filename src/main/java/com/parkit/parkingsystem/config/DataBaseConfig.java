@@ -1,37 +1,188 @@
 package com.parkit.parkingsystem.config;
 
+import com.parkit.parkingsystem.metrics.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Connections to the database of the application. The backend is chosen with {@code parkit.db.backend}:
+ * {@code mysql} (default), or {@code embedded} for an H2 database running in-process in MySQL mode and
+ * stored in a local file. {@code parkit.db.url}, {@code parkit.db.user} and {@code parkit.db.password}
+ * override the defaults of the backend. MySQL URLs get {@code useCursorFetch=true} unless they set it, so
+ * that scans with a fetch size stream their rows.
+ */
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    public static final String MYSQL_BACKEND = "mysql";
+    public static final String EMBEDDED_BACKEND = "embedded";
+
+    // useCursorFetch: Connector/J otherwise reads whole result sets into memory, whatever the fetch size
+    private static final String PROD_URL = "jdbc:mysql://localhost:3306/prod?serverTimezone=Europe/Paris&useCursorFetch=true";
+    private static final String PROD_USER = "root";
+    private static final String PROD_PASSWORD = "eeo560";
+
+    // WRITE_DELAY=0 hands every commit to the OS before returning, so it survives a crash of the process;
+    // H2 does not fsync on commit, so a power loss can still lose the last commits
+    private static final String EMBEDDED_URL = "jdbc:h2:file:./data/parkit;MODE=MySQL;DATABASE_TO_LOWER=TRUE;WRITE_DELAY=0";
+    private static final String EMBEDDED_USER = "sa";
+    private static final String EMBEDDED_PASSWORD = "";
+
+    // one pool per database, shared by every DAO pointing at it
+    private static final ConcurrentMap<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String poolKey;
+    // the shared pool of the database, resolved on first use
+    private volatile ConnectionPool connectionPool;
+
+    public DataBaseConfig() {
+        this(System.getProperty("parkit.db.url", isEmbeddedBackend() ? EMBEDDED_URL : PROD_URL),
+                System.getProperty("parkit.db.user", isEmbeddedBackend() ? EMBEDDED_USER : PROD_USER),
+                System.getProperty("parkit.db.password", isEmbeddedBackend() ? EMBEDDED_PASSWORD : PROD_PASSWORD));
+    }
+
+    /**
+     * @return whether {@code parkit.db.backend} selects the embedded database, which only this process can open
+     */
+    public static boolean isEmbeddedBackend() {
+        String backend = System.getProperty("parkit.db.backend", MYSQL_BACKEND);
+        if (!EMBEDDED_BACKEND.equals(backend) && !MYSQL_BACKEND.equals(backend)) {
+            throw new IllegalArgumentException("Unknown parkit.db.backend " + backend + ", expected "
+                    + MYSQL_BACKEND + " or " + EMBEDDED_BACKEND);
+        }
+        return EMBEDDED_BACKEND.equals(backend);
+    }
+
+    /**
+     * @return the JDBC driver class for the URL
+     */
+    public static String getDriverClassName(String url) {
+        return url.startsWith("jdbc:h2:") ? "org.h2.Driver" : "com.mysql.cj.jdbc.Driver";
+    }
+
+    public DataBaseConfig(String url, String user, String password) {
+        this.url = withCursorFetch(url);
+        this.user = user;
+        this.password = password;
+        this.poolKey = user + "@" + this.url;
+    }
+
+    /**
+     * @return the URL with {@code useCursorFetch=true} added if it is a MySQL URL that does not set it
+     */
+    public static String withCursorFetch(String url) {
+        if (!url.startsWith("jdbc:mysql:") || url.contains("useCursorFetch=")) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? "?" : "&") + "useCursorFetch=true";
+    }
+
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod?serverTimezone=Europe/Paris","root","eeo560");
+        return getConnectionPool().borrow();
+    }
+
+    /**
+     * Opens a physical connection, bypassing the pool.
+     */
+    public Connection createConnection() throws ClassNotFoundException, SQLException {
+        logger.debug("Create DB connection to {}", url);
+        Class.forName(getDriverClassName(url));
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    public ConnectionPool getConnectionPool() {
+        ConnectionPool pool = connectionPool;
+        if (pool == null || pool.isClosed()) {
+            pool = connectionPools.computeIfAbsent(poolKey, this::createConnectionPool);
+            connectionPool = pool;
+        }
+        return pool;
+    }
+
+    private ConnectionPool createConnectionPool(String key) {
+        ConnectionPool pool = new ConnectionPool(
+                this::createConnection,
+                Integer.getInteger("parkit.db.pool.maxSize", 10),
+                Long.getLong("parkit.db.pool.maxWaitMillis", 5000L),
+                Long.getLong("parkit.db.pool.idleTimeoutMillis", 10 * 60 * 1000L),
+                Integer.getInteger("parkit.db.pool.validationTimeoutSeconds", 2),
+                Long.getLong("parkit.db.pool.leakDetectionThresholdMillis", 30 * 1000L),
+                Integer.getInteger("parkit.db.pool.statementCacheSize", 32),
+                Boolean.getBoolean("parkit.db.pool.recordBorrowSites"));
+        registerPoolGauges(key, pool);
+        return pool;
+    }
+
+    public static void closeConnectionPools() {
+        for (String key : connectionPools.keySet()) {
+            Metrics.removeGauges(gaugePrefix(key));
+        }
+        for (ConnectionPool connectionPool : connectionPools.values()) {
+            connectionPool.close();
+        }
+        connectionPools.clear();
+    }
+
+    private static void registerPoolGauges(String key, ConnectionPool connectionPool) {
+        String prefix = gaugePrefix(key);
+        Metrics.gauge(prefix + "active", connectionPool::getActiveCount);
+        Metrics.gauge(prefix + "idle", connectionPool::getIdleCount);
+        Metrics.gauge(prefix + "created", connectionPool::getCreatedCount);
+        Metrics.gauge(prefix + "statementCacheHits", connectionPool::getStatementCacheHitCount);
+        Metrics.gauge(prefix + "statementCacheMisses", connectionPool::getStatementCacheMissCount);
+    }
+
+    /**
+     * Gauges of a pool are named after its database, without the user and the URL parameters.
+     */
+    private static String gaugePrefix(String key) {
+        String database = key.substring(key.lastIndexOf('/') + 1);
+        int parameters = database.indexOf('?');
+        return "pool." + (parameters < 0 ? database : database.substring(0, parameters)) + ".";
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
+            if (getConnectionPool().release(con)) {
+                return;
+            }
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                logger.debug("Closing DB connection");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
         }
     }
 
+    /**
+     * Prepares the statement through the per-connection statement cache of the pool.
+     * Statements obtained here must be given back with closePreparedStatement.
+     */
+    public PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        return getConnectionPool().prepareStatement(con, sql);
+    }
+
+    public PreparedStatement prepareStatement(Connection con, String sql, int autoGeneratedKeys) throws SQLException {
+        return getConnectionPool().prepareStatement(con, sql, autoGeneratedKeys);
+    }
+
     public void closePreparedStatement(PreparedStatement ps) {
         if(ps!=null){
             try {
+                if (getConnectionPool().releaseStatement(ps)) {
+                    return;
+                }
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.debug("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -42,7 +193,7 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.debug("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
@@ -0,0 +1,151 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings the database schema up to date by running the scripts of {@code db/migration} on the classpath.
+ * Scripts are named {@code V<version>__<description>.sql}, run in version order, and recorded in the
+ * {@code schema_version} table so that each one runs once per database.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+    private static final String MIGRATION_PATH = "db/migration/";
+
+    // in version order, a new script is appended here
+    private static final String[] MIGRATIONS = {
+            "V1__baseline.sql",
+            "V2__ticket_lookup_indexes.sql",
+            "V3__archived_visits.sql",
+            "V4__seed_parking_spots.sql",
+            "V5__journal_checkpoint.sql",
+            "V6__backfill_vehicle_visits.sql"
+    };
+
+    private static final String CREATE_SCHEMA_VERSION = "create table if not exists schema_version("
+            + "VERSION int PRIMARY KEY, DESCRIPTION varchar(100) NOT NULL, INSTALLED_ON DATETIME NOT NULL)";
+    private static final String GET_SCHEMA_VERSIONS = "select VERSION from schema_version";
+    private static final String SAVE_SCHEMA_VERSION = "insert into schema_version(VERSION, DESCRIPTION, INSTALLED_ON) values(?,?,?)";
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public SchemaMigrator(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * Runs the scripts not yet recorded in {@code schema_version}. A failing script stops the migration,
+     * the scripts before it stay applied.
+     * @return the number of scripts run, or -1 on error
+     */
+    public int migrate() {
+        Connection con = null;
+        int applied = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            Set<Integer> installed = getInstalledVersions(con);
+            for (String migration : MIGRATIONS) {
+                int version = getVersion(migration);
+                if (installed.contains(version)) {
+                    continue;
+                }
+                logger.info("Migrating schema to version " + version + " with " + migration);
+                for (String sql : splitStatements(readScript(migration))) {
+                    try (Statement st = con.createStatement()) {
+                        st.execute(sql);
+                    }
+                }
+                saveVersion(con, version, getDescription(migration));
+                applied++;
+            }
+            if (applied > 0) {
+                logger.info("Applied " + applied + " schema migration(s)");
+            }
+            return applied;
+        } catch (Exception ex) {
+            logger.error("Error migrating the database schema after " + applied + " migration(s)", ex);
+            return -1;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private Set<Integer> getInstalledVersions(Connection con) throws SQLException {
+        Set<Integer> installed = new HashSet<>();
+        try (Statement st = con.createStatement()) {
+            st.execute(CREATE_SCHEMA_VERSION);
+            try (ResultSet rs = st.executeQuery(GET_SCHEMA_VERSIONS)) {
+                while (rs.next()) {
+                    installed.add(rs.getInt(1));
+                }
+            }
+        }
+        return installed;
+    }
+
+    private void saveVersion(Connection con, int version, String description) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(SAVE_SCHEMA_VERSION)) {
+            ps.setInt(1, version);
+            ps.setString(2, description);
+            ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            ps.execute();
+        }
+    }
+
+    private static String readScript(String migration) throws IOException {
+        InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + migration);
+        if (in == null) {
+            throw new IOException("Migration script " + MIGRATION_PATH + migration + " not found on the classpath");
+        }
+        StringBuilder script = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                script.append(line).append('\n');
+            }
+        }
+        return script.toString();
+    }
+
+    private static int getVersion(String migration) {
+        return Integer.parseInt(migration.substring(1, migration.indexOf("__")));
+    }
+
+    private static String getDescription(String migration) {
+        return migration.substring(migration.indexOf("__") + 2, migration.lastIndexOf('.')).replace('_', ' ');
+    }
+
+    /**
+     * Splits a script on the semicolons ending its statements, dropping block and line comments.
+     * Semicolons inside string literals are not supported.
+     */
+    public static List<String> splitStatements(String script) {
+        String withoutComments = script.replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("(?m)--.*$", "");
+        List<String> statements = new ArrayList<>();
+        for (String statement : withoutComments.split(";")) {
+            String sql = statement.trim();
+            if (!sql.isEmpty()) {
+                statements.add(sql);
+            }
+        }
+        return statements;
+    }
+}
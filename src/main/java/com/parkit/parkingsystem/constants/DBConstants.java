@@ -2,14 +2,51 @@ package com.parkit.parkingsystem.constants;
 
 public class DBConstants {
 
+    // size of the VEHICLE_REG_NUMBER columns
+    public static final int MAX_VEHICLE_REG_NUMBER_LENGTH = 10;
+
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    // locking read: sees the latest committed rows, not the snapshot of a REPEATABLE READ transaction
+    public static final String LOCK_NEXT_PARKING_SPOT = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE = ? order by PARKING_NUMBER limit 1 for update";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
     public static final String GET_PARKING_SPOT = "select * from parking where PARKING_NUMBER = ?";
+    public static final String GET_ALL_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
+    public static final String COUNT_AVAILABLE_PARKING_SPOTS = "select count(*) from parking where AVAILABLE = true and TYPE = ?";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
     public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? and t.OUT_TIME is null order by t.IN_TIME  limit 1";
-    public static final String GET_NB_TICKET = "select count(*) from ticket where VEHICLE_REG_NUMBER=? AND OUT_TIME IS NOT NULL";
-}
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, v.NB_VISITS from ticket t join parking p on p.parking_number = t.parking_number left join vehicle_visit v on v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER where t.VEHICLE_REG_NUMBER=? and t.OUT_TIME is null order by t.IN_TIME  limit 1";
+    public static final String GET_LAST_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t, parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER = ? order by t.IN_TIME desc limit 1";
+    public static final String GET_OPEN_TICKETS = "select t.ID, t.PARKING_NUMBER, p.TYPE, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME is null";
+    public static final String GET_NB_TICKET = "select NB_VISITS from vehicle_visit where VEHICLE_REG_NUMBER=?";
+    public static final String GET_OPEN_TICKET_ID = "select ID from ticket where VEHICLE_REG_NUMBER=? and OUT_TIME is null order by IN_TIME, ID limit 1";
+    public static final String INCREMENT_NB_TICKET = "insert into vehicle_visit(VEHICLE_REG_NUMBER, NB_VISITS) values(?,1) on duplicate key update NB_VISITS = NB_VISITS + 1";
+
+    // closed tickets in ID order; RECURRING when the vehicle had parked before, archived visits included, which earned the recurring discount.
+    // The earlier visit is looked up per ticket of the range on TICKET_VEHICLE_IN_TIME, so a chunk costs the same whatever the size of the table
+    public static final String GET_CLOSED_TICKETS = "select t.ID, t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE, "
+            + "coalesce(v.NB_ARCHIVED, 0) > 0 or exists (select 1 from ticket e where e.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER "
+            + "and e.IN_TIME <= t.IN_TIME and e.OUT_TIME is not null and (e.IN_TIME < t.IN_TIME or e.ID < t.ID)) as RECURRING "
+            + "from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER "
+            + "left join vehicle_visit v on v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER "
+            + "where t.ID between ? and ? and t.OUT_TIME is not null order by t.ID";
+    public static final String COUNT_CLOSED_TICKETS = "select count(*) from ticket where OUT_TIME is not null and ID between ? and ?";
+    public static final String UPDATE_TICKET_PRICE = "update ticket set PRICE=? where ID=?";
 
+    // archival: closed tickets older than the retention window, in ID order
+    public static final String GET_TICKETS_TO_ARCHIVE = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID > ? and OUT_TIME < ? order by ID limit ?";
+    public static final String COUNT_ARCHIVED_TICKETS_BY_VEHICLE = "select VEHICLE_REG_NUMBER, count(*) from ticket where ID between ? and ? and OUT_TIME < ? group by VEHICLE_REG_NUMBER";
+    // a plate without a row had these visits counted nowhere: they become its visits too
+    public static final String ADD_ARCHIVED_VISITS = "insert into vehicle_visit(VEHICLE_REG_NUMBER, NB_VISITS, NB_ARCHIVED) values(?,?,?) "
+            + "on duplicate key update NB_ARCHIVED = NB_ARCHIVED + ?";
+    public static final String DELETE_ARCHIVED_TICKETS = "delete from ticket where ID between ? and ? and OUT_TIME < ?";
 
+    // last journal record written to the database, updated in the transaction writing the records
+    public static final String GET_JOURNAL_CHECKPOINT = "select LAST_SEQ from journal_checkpoint where NAME = ?";
+    public static final String SAVE_JOURNAL_CHECKPOINT = "insert into journal_checkpoint(NAME, LAST_SEQ) values(?,?) on duplicate key update LAST_SEQ = ?";
+
+    // tickets overlapping [from, to): in before to, still open or out after from
+    public static final String GET_TICKETS_IN_PERIOD = "select t.PARKING_NUMBER, p.TYPE, t.IN_TIME, t.OUT_TIME, t.PRICE "
+            + "from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.IN_TIME < ? and (t.OUT_TIME is null or t.OUT_TIME >= ?)";
+}
@@ -0,0 +1,177 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary image of the spot index and the open tickets at a ticket journal sequence number, so that a
+ * restart maps one file instead of scanning the parking and ticket tables. Written to a temporary file
+ * through a memory mapping, forced, then renamed over the previous snapshot, so a crash leaves either
+ * snapshot whole. A snapshot whose checksum does not match is rejected.
+ * <p>
+ * Layout: magic, version, seq, created time, spot count, ticket count, CRC32 of the body, then
+ * 6 bytes per spot and 27 bytes plus the plate per open ticket.
+ */
+public final class LotSnapshot {
+
+    private static final int MAGIC = 0x504B534E; // "PKSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int SPOT_SIZE = 4 + 1 + 1;
+    private static final int TICKET_FIXED_SIZE = 4 + 4 + 1 + 8 + 8 + 2;
+    private static final ParkingType[] TYPES = ParkingType.values();
+
+    private final long seq;
+    private final long createdMillis;
+    private final List<ParkingSpot> parkingSpots;
+    private final List<Ticket> openTickets;
+
+    private LotSnapshot(long seq, long createdMillis, List<ParkingSpot> parkingSpots, List<Ticket> openTickets) {
+        this.seq = seq;
+        this.createdMillis = createdMillis;
+        this.parkingSpots = parkingSpots;
+        this.openTickets = openTickets;
+    }
+
+    /**
+     * Replaces the snapshot file with the given state.
+     * @param seq sequence number of the last journal record reflected by the state
+     * @return the size of the snapshot in bytes
+     */
+    public static long write(Path file, long seq, List<ParkingSpot> parkingSpots, List<Ticket> openTickets) throws IOException {
+        List<byte[]> plates = new ArrayList<>(openTickets.size());
+        long size = HEADER_SIZE + (long) SPOT_SIZE * parkingSpots.size();
+        for (Ticket ticket : openTickets) {
+            byte[] plate = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+            plates.add(plate);
+            size += TICKET_FIXED_SIZE + plate.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + openTickets.size() + " open tickets is too large to map");
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(HEADER_SIZE);
+            for (ParkingSpot parkingSpot : parkingSpots) {
+                buffer.putInt(parkingSpot.getId());
+                buffer.put((byte) parkingSpot.getParkingType().ordinal());
+                buffer.put((byte) (parkingSpot.isAvailable() ? 1 : 0));
+            }
+            for (int i = 0; i < openTickets.size(); i++) {
+                Ticket ticket = openTickets.get(i);
+                byte[] plate = plates.get(i);
+                buffer.putInt(ticket.getId());
+                buffer.putInt(ticket.getParkingSpot().getId());
+                buffer.put((byte) ticket.getParkingSpot().getParkingType().ordinal());
+                buffer.putLong(ticket.getInTime().getTime());
+                buffer.putDouble(ticket.getPrice());
+                buffer.putShort((short) plate.length);
+                buffer.put(plate);
+            }
+            buffer.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(buffer);
+            buffer.position(0);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(seq);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putInt(parkingSpots.size());
+            buffer.putInt(openTickets.size());
+            buffer.putInt((int) crc.getValue());
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * @return the snapshot, or null if there is none
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static LotSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot " + file + " of " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Invalid snapshot " + file + ": unknown format");
+            }
+            long seq = buffer.getLong();
+            long createdMillis = buffer.getLong();
+            int nbSpots = buffer.getInt();
+            int nbTickets = buffer.getInt();
+            int checksum = buffer.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum || nbSpots < 0 || nbTickets < 0) {
+                throw new IOException("Invalid snapshot " + file + ": checksum mismatch");
+            }
+            List<ParkingSpot> parkingSpots = new ArrayList<>(nbSpots);
+            for (int i = 0; i < nbSpots; i++) {
+                int parkingNumber = buffer.getInt();
+                ParkingType parkingType = TYPES[buffer.get()];
+                parkingSpots.add(new ParkingSpot(parkingNumber, parkingType, buffer.get() == 1));
+            }
+            List<Ticket> openTickets = new ArrayList<>(nbTickets);
+            for (int i = 0; i < nbTickets; i++) {
+                Ticket ticket = new Ticket();
+                ticket.setId(buffer.getInt());
+                int parkingNumber = buffer.getInt();
+                ticket.setParkingSpot(new ParkingSpot(parkingNumber, TYPES[buffer.get()], false));
+                ticket.setInTime(new Date(buffer.getLong()));
+                ticket.setPrice(buffer.getDouble());
+                byte[] plate = new byte[buffer.getShort()];
+                buffer.get(plate);
+                ticket.setVehicleRegNumber(new String(plate, StandardCharsets.UTF_8));
+                openTickets.add(ticket);
+            }
+            return new LotSnapshot(seq, createdMillis, Collections.unmodifiableList(parkingSpots),
+                    Collections.unmodifiableList(openTickets));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // a count or a type that does not fit the file
+            throw new IOException("Invalid snapshot " + file, e);
+        }
+    }
+
+    /**
+     * @return the sequence number of the last journal record reflected by the snapshot
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public List<ParkingSpot> getParkingSpots() {
+        return parkingSpots;
+    }
+
+    public List<Ticket> getOpenTickets() {
+        return openTickets;
+    }
+}
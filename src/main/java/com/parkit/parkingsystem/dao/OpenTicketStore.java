@@ -0,0 +1,133 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory copy of the open tickets of the {@code ticket} table, keyed by vehicle registration number.
+ * Its size follows the number of parked vehicles, not the ticket history, so the exit lookup costs the
+ * same whatever the size of the table. Entries are immutable snapshots; every lookup returns a new Ticket.
+ */
+public class OpenTicketStore {
+
+    // oldest first; a plate has a single open ticket unless a gate let it in twice
+    private final ConcurrentMap<String, OpenTicket[]> openTickets = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void load(Collection<Ticket> tickets) {
+        openTickets.clear();
+        for (Ticket ticket : tickets) {
+            add(ticket);
+        }
+        loaded = true;
+    }
+
+    public void add(Ticket ticket) {
+        final OpenTicket openTicket = new OpenTicket(ticket);
+        openTickets.compute(ticket.getVehicleRegNumber(), (vehicleRegNumber, current) -> {
+            if (current == null) {
+                return new OpenTicket[]{openTicket};
+            }
+            OpenTicket[] updated = Arrays.copyOf(current, current.length + 1);
+            int i = current.length;
+            while (i > 0 && updated[i - 1].inMillis > openTicket.inMillis) {
+                updated[i] = updated[i - 1];
+                i--;
+            }
+            updated[i] = openTicket;
+            return updated;
+        });
+    }
+
+    public void remove(String vehicleRegNumber, final int id) {
+        openTickets.computeIfPresent(vehicleRegNumber, (key, current) -> {
+            OpenTicket[] updated = new OpenTicket[current.length];
+            int count = 0;
+            for (OpenTicket openTicket : current) {
+                if (openTicket.id != id) {
+                    updated[count++] = openTicket;
+                }
+            }
+            return count == 0 ? null : Arrays.copyOf(updated, count);
+        });
+    }
+
+    /**
+     * Takes the oldest open ticket of the vehicle out of the store, atomically, so two exits of the same
+     * vehicle cannot close the same ticket.
+     * @return the ticket taken, or null if the vehicle has none
+     */
+    public Ticket poll(String vehicleRegNumber) {
+        final OpenTicket[] polled = new OpenTicket[1];
+        openTickets.computeIfPresent(vehicleRegNumber, (key, current) -> {
+            polled[0] = current[0];
+            return current.length == 1 ? null : Arrays.copyOfRange(current, 1, current.length);
+        });
+        return (polled[0] == null) ? null : polled[0].toTicket(vehicleRegNumber);
+    }
+
+    /**
+     * @return the oldest open ticket of the vehicle, or null if it has none
+     */
+    public Ticket get(String vehicleRegNumber) {
+        OpenTicket[] current = openTickets.get(vehicleRegNumber);
+        return (current == null) ? null : current[0].toTicket(vehicleRegNumber);
+    }
+
+    /**
+     * @return a copy of every open ticket, oldest first for each vehicle
+     */
+    public List<Ticket> getAll() {
+        List<Ticket> tickets = new ArrayList<>(openTickets.size());
+        for (Map.Entry<String, OpenTicket[]> entry : openTickets.entrySet()) {
+            for (OpenTicket openTicket : entry.getValue()) {
+                tickets.add(openTicket.toTicket(entry.getKey()));
+            }
+        }
+        return tickets;
+    }
+
+    public int size() {
+        return openTickets.size();
+    }
+
+    private static final class OpenTicket {
+        private final int id;
+        private final int parkingNumber;
+        private final ParkingType parkingType;
+        private final double price;
+        private final long inMillis;
+
+        private OpenTicket(Ticket ticket) {
+            this.id = ticket.getId();
+            this.parkingNumber = ticket.getParkingSpot().getId();
+            this.parkingType = ticket.getParkingSpot().getParkingType();
+            this.price = ticket.getPrice();
+            this.inMillis = ticket.getInTime().getTime();
+        }
+
+        private Ticket toTicket(String vehicleRegNumber) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+            ticket.setId(id);
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(price);
+            ticket.setInTime(new Date(inMillis));
+            return ticket;
+        }
+    }
+}
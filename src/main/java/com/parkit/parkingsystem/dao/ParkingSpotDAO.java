@@ -3,36 +3,158 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ParkingSpotDAO {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
+
+    private static final LatencyHistogram CLAIM_TIMER = Metrics.timer("dao.parkingSpot.claim");
+    private static final LatencyHistogram NEXT_AVAILABLE_TIMER = Metrics.timer("dao.parkingSpot.nextAvailable");
+    private static final LatencyHistogram COUNT_AVAILABLE_TIMER = Metrics.timer("dao.parkingSpot.countAvailable");
+    private static final LatencyHistogram UPDATE_TIMER = Metrics.timer("dao.parkingSpot.update");
+    private static final LatencyHistogram GET_TIMER = Metrics.timer("dao.parkingSpot.get");
+    private static final LatencyHistogram GET_ALL_TIMER = Metrics.timer("dao.parkingSpot.getAll");
+    private static final LongAdder SPOTS_CLAIMED = Metrics.counter("spots.claimed");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    private final ParkingSpotIndex parkingSpotIndex = new ParkingSpotIndex();
+    // spots found drifting by the last reconciliation, with the index clock read before it
+    private Set<Integer> driftedSpots = Collections.emptySet();
+    private long driftedSince;
+
     public int getNextAvailableSlot(ParkingType parkingType){
+        if (parkingSpotIndex.isLoaded()) {
+            return parkingSpotIndex.getLowestAvailable(parkingType);
+        }
         Connection con = null;
         int result=-1;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+            result = queryNextAvailableSlot(con, parkingType);
+        }catch (Exception ex){
+            logger.error("Error fetching next available slot",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    /**
+     * Picks the lowest free spot of this type and marks it unavailable in a single conditional update,
+     * retrying on the next free spot when another gate claimed it first.
+     * @return the claimed spot number, 0 if no spot is left, -1 on error
+     */
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            return claimNextAvailableSlot(con, parkingType);
+        } catch (Exception ex) {
+            logger.error("Error claiming parking spot", ex);
+            return -1;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Claims a spot inside the unit of work. The row stays locked until the transaction ends
+     * and the spot is given back to the in-memory index if it rolls back.
+     * @return the claimed spot number, or 0 if no spot is left
+     * @throws SQLException also when every attempt lost its spot to another gate
+     */
+    public int claimNextAvailableSlot(UnitOfWork unitOfWork, ParkingType parkingType) throws SQLException {
+        final int parkingNumber = claimNextAvailableSlot(unitOfWork.getConnection(), parkingType);
+        if (parkingNumber > 0) {
+            unitOfWork.afterRollback(() -> parkingSpotIndex.update(parkingNumber, true));
+        }
+        return parkingNumber;
+    }
+
+    private int claimNextAvailableSlot(Connection con, ParkingType parkingType) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; attempt <= MAX_CLAIM_ATTEMPTS; attempt++) {
+                int parkingNumber = parkingSpotIndex.isLoaded()
+                        ? parkingSpotIndex.pollLowestAvailable(parkingType)
+                        : lockNextAvailableSlot(con, parkingType);
+                if (parkingNumber <= 0) {
+                    return parkingNumber;
+                }
+                int claimed;
+                try {
+                    claimed = claimParkingSpot(con, parkingNumber);
+                } catch (SQLException e) {
+                    parkingSpotIndex.update(parkingNumber, true);
+                    throw e;
+                }
+                if (claimed == 1) {
+                    SPOTS_CLAIMED.increment();
+                    return parkingNumber;
+                }
+                logger.debug("Parking spot {} claimed by another gate, retrying", Unbox.box(parkingNumber));
+            }
+            // spots may still be free: this is not NO_SPOT_AVAILABLE
+            throw new SQLTransientException("Unable to claim a " + parkingType + " parking spot after "
+                    + MAX_CLAIM_ATTEMPTS + " attempts");
+        } finally {
+            CLAIM_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Number of free spots of this type, read from the in-memory counters without touching the
+     * database once the index is loaded.
+     * @return the number of free spots, or -1 on error
+     */
+    public int getNbAvailableSlots(ParkingType parkingType) {
+        if (parkingSpotIndex.isLoaded()) {
+            return parkingSpotIndex.getNbAvailable(parkingType);
+        }
+        long start = System.nanoTime();
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        int result = -1;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.COUNT_AVAILABLE_PARKING_SPOTS);
             ps.setString(1, parkingType.toString());
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                result = rs.getInt(1);;
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                result = rs.getInt(1);
             }
+        } catch (Exception ex) {
+            countDbError(con, ex);
+            logger.error("Error counting available slots", ex);
+        } finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
-        }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
-        }finally {
             dataBaseConfig.closeConnection(con);
+            COUNT_AVAILABLE_TIMER.recordSince(start);
         }
         return result;
     }
@@ -42,11 +164,10 @@ public class ParkingSpotDAO {
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
-            ps.setBoolean(1, parkingSpot.isAvailable());
-            ps.setInt(2, parkingSpot.getId());
-            int updateRowCount = ps.executeUpdate();
-            dataBaseConfig.closePreparedStatement(ps);
+            int updateRowCount = updateParkingRow(con, parkingSpot);
+            if (updateRowCount == 1) {
+                parkingSpotIndex.update(parkingSpot.getId(), parkingSpot.isAvailable());
+            }
             return (updateRowCount == 1);
         }catch (Exception ex){
             logger.error("Error updating parking info",ex);
@@ -55,27 +176,249 @@ public class ParkingSpotDAO {
             dataBaseConfig.closeConnection(con);
         }
     }
+
+    public boolean updateParking(UnitOfWork unitOfWork, final ParkingSpot parkingSpot) throws SQLException {
+        final int parkingNumber = parkingSpot.getId();
+        final boolean available = parkingSpot.isAvailable();
+        int updateRowCount = updateParkingRow(unitOfWork.getConnection(), parkingSpot);
+        if (updateRowCount == 1) {
+            unitOfWork.afterCommit(() -> parkingSpotIndex.update(parkingNumber, available));
+        }
+        return (updateRowCount == 1);
+    }
+
+    /**
+     * Takes the lowest free spot of this type out of the in-memory index only, for gates acknowledged by
+     * the ticket journal; the parking table is updated when the journal is flushed.
+     * @return the spot number, 0 if no spot is left, -1 if the index is not loaded
+     */
+    public int reserveNextAvailableSlot(ParkingType parkingType) {
+        if (!parkingSpotIndex.isLoaded()) {
+            return -1;
+        }
+        int parkingNumber = parkingSpotIndex.pollLowestAvailable(parkingType);
+        if (parkingNumber > 0) {
+            SPOTS_CLAIMED.increment();
+        }
+        return parkingNumber;
+    }
+
+    /**
+     * Gives a spot back to the in-memory index only, see {@link #reserveNextAvailableSlot}.
+     */
+    public void releaseSlot(int parkingNumber) {
+        parkingSpotIndex.update(parkingNumber, true);
+    }
+
+    /**
+     * Takes a given spot out of the in-memory index only, when a journaled entry is replayed.
+     */
+    public void reserveSlot(int parkingNumber) {
+        parkingSpotIndex.update(parkingNumber, false);
+    }
+
+    /**
+     * Writes the availability of the spot to the parking table without touching the in-memory index,
+     * which is ahead of the table while journaled gate events are being flushed.
+     */
+    public boolean writeAvailability(UnitOfWork unitOfWork, int parkingNumber, boolean available) throws SQLException {
+        return updateParkingRow(unitOfWork.getConnection(), new ParkingSpot(parkingNumber, null, available)) == 1;
+    }
+
+    private int queryNextAvailableSlot(Connection con, ParkingType parkingType) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_NEXT_PARKING_SPOT);
+            ps.setString(1, parkingType.toString());
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : -1;
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            NEXT_AVAILABLE_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Reads and locks the lowest free spot with a locking read, which sees the spots committed by other
+     * gates even inside a REPEATABLE READ transaction that already read the table.
+     * @return the spot number, or 0 if no spot is left
+     */
+    private int lockNextAvailableSlot(Connection con, ParkingType parkingType) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.LOCK_NEXT_PARKING_SPOT);
+            ps.setString(1, parkingType.toString());
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            NEXT_AVAILABLE_TIMER.recordSince(start);
+        }
+    }
+
+    private int claimParkingSpot(Connection con, int parkingNumber) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.CLAIM_PARKING_SPOT);
+            ps.setInt(1, parkingNumber);
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private int updateParkingRow(Connection con, ParkingSpot parkingSpot) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.UPDATE_PARKING_SPOT);
+            ps.setBoolean(1, parkingSpot.isAvailable());
+            ps.setInt(2, parkingSpot.getId());
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            UPDATE_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Counts a failed statement. Failures to get a connection are counted by the pool, not here.
+     */
+    private static void countDbError(Connection con, Exception ex) {
+        if (con != null && ex instanceof SQLException) {
+            Metrics.DB_ERRORS.increment();
+        }
+    }
     
     public ParkingSpot getParkingSpot(int parkingNumber) {
+		long start = System.nanoTime();
 		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
 		ParkingSpot parkingSpot = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOT);
+			ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_PARKING_SPOT);
 			ps.setInt(1, parkingNumber);                                                   
-			ResultSet rs = ps.executeQuery();                                              
+			rs = ps.executeQuery();                                              
 			if (rs.next()) {                                                               
 				parkingSpot = new ParkingSpot(rs.getInt("parking_number"), ParkingType.valueOf(rs.getString("type")), rs.getBoolean("available"));
 			}
-			dataBaseConfig.closeResultSet(rs);
-			dataBaseConfig.closePreparedStatement(ps);
 		} catch (Exception ex) {
+			countDbError(con, ex);
 			logger.error("Error fetching parking spot", ex);
 		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
+			GET_TIMER.recordSince(start);
 		}
 		return parkingSpot;
 	}
 
+    public List<ParkingSpot> getAllParkingSpots() {
+        long start = System.nanoTime();
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<ParkingSpot> parkingSpots = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_ALL_PARKING_SPOTS);
+            rs = ps.executeQuery();
+            parkingSpots = new ArrayList<>();
+            while (rs.next()) {
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+            }
+        } catch (Exception ex) {
+            countDbError(con, ex);
+            logger.error("Error fetching parking spots", ex);
+            parkingSpots = null;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+            GET_ALL_TIMER.recordSince(start);
+        }
+        return parkingSpots;
+    }
+
+    /**
+     * Loads the free spots in memory so that getNextAvailableSlot no longer queries the database.
+     */
+    public boolean loadSpotIndex() {
+        List<ParkingSpot> parkingSpots = getAllParkingSpots();
+        if (parkingSpots == null) {
+            return false;
+        }
+        parkingSpotIndex.load(parkingSpots);
+        logger.info("Loaded " + parkingSpots.size() + " parking spots in memory");
+        return true;
+    }
 
+    /**
+     * Loads the in-memory index from spots saved earlier instead of the parking table.
+     */
+    public void loadSpotIndex(Collection<ParkingSpot> parkingSpots) {
+        parkingSpotIndex.load(parkingSpots);
+    }
+
+    /**
+     * @return the spots of the in-memory index with their availability, or null if the index is not loaded
+     */
+    public List<ParkingSpot> getIndexedParkingSpots() {
+        return parkingSpotIndex.isLoaded() ? parkingSpotIndex.getParkingSpots() : null;
+    }
+
+    /**
+     * Checks the in-memory index against the parking table. A spot is repaired only when it still differs
+     * from the table at the next check and no gate changed it in between, so that a change whose
+     * transaction had not committed yet, or that a gate made after the table was read, is never undone.
+     * @return the number of spots repaired, or -1 if the table could not be read
+     */
+    public synchronized int reconcileSpotIndex() {
+        long since = parkingSpotIndex.getClock();
+        List<ParkingSpot> parkingSpots = getAllParkingSpots();
+        if (parkingSpots == null) {
+            return -1;
+        }
+        int repaired = parkingSpotIndex.repair(parkingSpots, driftedSpots, driftedSince);
+        if (repaired > 0) {
+            logger.warn("Parking spot index drifted from the parking table on " + repaired + " spot(s), repaired");
+        }
+        driftedSpots = parkingSpotIndex.findDrift(parkingSpots, since);
+        driftedSince = since;
+        return repaired;
+    }
+
+    /**
+     * Periodically reconciles the in-memory index with the parking table, on a daemon thread.
+     */
+    public ScheduledExecutorService startSpotIndexReconciliation(long periodMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "parking-spot-index-reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileSpotIndex, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
 }
@@ -0,0 +1,251 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory view of the free spots of the {@code parking} table, one sorted set per parking type.
+ * The lowest free spot of a type is found in O(log n) without querying the database.
+ * Free and total spot counts per type are kept in counters, adjusted only when a spot actually
+ * changes state, so that they can be read in O(1).
+ * <p>
+ * Every change made by a gate is stamped with a logical clock, so that a reconciliation with a table
+ * read taken earlier never undoes it.
+ */
+public class ParkingSpotIndex {
+
+    private volatile State state = new State();
+    private volatile boolean loaded;
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentMap<Integer, Long> changedAt = new ConcurrentHashMap<>();
+
+    /**
+     * Sets and counters of one load, replaced as a whole so that readers never see a half-loaded lot.
+     */
+    private static final class State {
+        private final Map<ParkingType, ConcurrentSkipListSet<Integer>> availableSpots = new EnumMap<>(ParkingType.class);
+        private final ConcurrentMap<Integer, ParkingType> spotTypes = new ConcurrentHashMap<>();
+        private final Map<ParkingType, AtomicInteger> nbAvailable = new EnumMap<>(ParkingType.class);
+        private final Map<ParkingType, AtomicInteger> nbSpots = new EnumMap<>(ParkingType.class);
+
+        private State() {
+            for (ParkingType parkingType : ParkingType.values()) {
+                availableSpots.put(parkingType, new ConcurrentSkipListSet<Integer>());
+                nbAvailable.put(parkingType, new AtomicInteger());
+                nbSpots.put(parkingType, new AtomicInteger());
+            }
+        }
+
+        private boolean isAvailable(int parkingNumber) {
+            ParkingType parkingType = spotTypes.get(parkingNumber);
+            return parkingType != null && availableSpots.get(parkingType).contains(parkingNumber);
+        }
+
+        private void setAvailable(int parkingNumber, ParkingType parkingType, boolean available) {
+            if (available) {
+                if (availableSpots.get(parkingType).add(parkingNumber)) {
+                    nbAvailable.get(parkingType).incrementAndGet();
+                }
+            } else if (availableSpots.get(parkingType).remove(parkingNumber)) {
+                nbAvailable.get(parkingType).decrementAndGet();
+            }
+        }
+
+        private void remove(int parkingNumber) {
+            ParkingType parkingType = spotTypes.remove(parkingNumber);
+            if (parkingType != null) {
+                setAvailable(parkingNumber, parkingType, false);
+                nbSpots.get(parkingType).decrementAndGet();
+            }
+        }
+
+        private void put(ParkingSpot parkingSpot) {
+            remove(parkingSpot.getId());
+            spotTypes.put(parkingSpot.getId(), parkingSpot.getParkingType());
+            nbSpots.get(parkingSpot.getParkingType()).incrementAndGet();
+            setAvailable(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable());
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Builds a new view of the lot and swaps it in. Gate changes made while it is built are not carried
+     * over: load when no gate is running, and let the reconciliation repair spots in place otherwise.
+     */
+    public synchronized void load(Collection<ParkingSpot> parkingSpots) {
+        State loading = new State();
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            loading.put(parkingSpot);
+        }
+        state = loading;
+        loaded = true;
+    }
+
+    /**
+     * @return the lowest free spot number of this type, or 0 when every spot is taken
+     */
+    public int getLowestAvailable(ParkingType parkingType) {
+        Integer lowest = state.availableSpots.get(parkingType).ceiling(Integer.MIN_VALUE);
+        return (lowest == null) ? 0 : lowest;
+    }
+
+    /**
+     * Atomically removes and returns the lowest free spot number of this type, or 0 when every spot is taken.
+     * Two threads polling at the same time never get the same spot.
+     */
+    public int pollLowestAvailable(ParkingType parkingType) {
+        boolean[] taken = new boolean[1];
+        while (true) {
+            State current = state;
+            ConcurrentSkipListSet<Integer> spots = current.availableSpots.get(parkingType);
+            Integer lowest = spots.ceiling(Integer.MIN_VALUE);
+            if (lowest == null) {
+                return 0;
+            }
+            // the stamp and the removal are made together, see repair
+            changedAt.compute(lowest, (spot, stamp) -> {
+                taken[0] = spots.remove(lowest);
+                if (!taken[0]) {
+                    return stamp;
+                }
+                current.nbAvailable.get(parkingType).decrementAndGet();
+                return clock.incrementAndGet();
+            });
+            if (taken[0]) {
+                return lowest;
+            }
+            // polled by another gate in between, try the next one
+        }
+    }
+
+    public int getNbAvailable(ParkingType parkingType) {
+        return state.nbAvailable.get(parkingType).get();
+    }
+
+    public int getNbSpots(ParkingType parkingType) {
+        return state.nbSpots.get(parkingType).get();
+    }
+
+    public void update(int parkingNumber, boolean available) {
+        // the stamp and the change are made together, see repair
+        changedAt.compute(parkingNumber, (spot, stamp) -> {
+            State current = state;
+            ParkingType parkingType = current.spotTypes.get(parkingNumber);
+            if (parkingType == null) {
+                return stamp;
+            }
+            current.setAvailable(parkingNumber, parkingType, available);
+            return clock.incrementAndGet();
+        });
+    }
+
+    /**
+     * @return every indexed spot with its current availability, by spot number
+     */
+    public List<ParkingSpot> getParkingSpots() {
+        State current = state;
+        List<ParkingSpot> parkingSpots = new ArrayList<>(current.spotTypes.size());
+        for (Map.Entry<Integer, ParkingType> spot : current.spotTypes.entrySet()) {
+            parkingSpots.add(new ParkingSpot(spot.getKey(), spot.getValue(), current.availableSpots.get(spot.getValue()).contains(spot.getKey())));
+        }
+        parkingSpots.sort(Comparator.comparingInt(ParkingSpot::getId));
+        return parkingSpots;
+    }
+
+    /**
+     * @return the current value of the clock stamping gate changes, to be read before the parking table
+     */
+    public long getClock() {
+        return clock.get();
+    }
+
+    /**
+     * Compares the index with a read of the parking table.
+     * @param since clock value read before the table
+     * @return the spots whose availability or type differ from the table and that no gate changed after {@code since}
+     */
+    public Set<Integer> findDrift(Collection<ParkingSpot> parkingSpots, long since) {
+        State current = state;
+        Set<Integer> drifted = new HashSet<>();
+        Set<Integer> inTable = new HashSet<>();
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            inTable.add(parkingSpot.getId());
+            if (differs(current, parkingSpot) && isUnchangedSince(parkingSpot.getId(), since)) {
+                drifted.add(parkingSpot.getId());
+            }
+        }
+        for (Integer parkingNumber : current.spotTypes.keySet()) {
+            if (!inTable.contains(parkingNumber) && isUnchangedSince(parkingNumber, since)) {
+                drifted.add(parkingNumber);
+            }
+        }
+        return drifted;
+    }
+
+    /**
+     * Realigns the given spots on a later read of the parking table, skipping those that now match it
+     * or that a gate changed after {@code since}.
+     * @param suspects spots returned by {@link #findDrift} with the same {@code since}
+     * @return the number of spots repaired
+     */
+    public synchronized int repair(Collection<ParkingSpot> parkingSpots, Set<Integer> suspects, long since) {
+        Map<Integer, ParkingSpot> inTable = new HashMap<>();
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            if (suspects.contains(parkingSpot.getId())) {
+                inTable.put(parkingSpot.getId(), parkingSpot);
+            }
+        }
+        int repaired = 0;
+        for (Integer parkingNumber : suspects) {
+            boolean[] applied = new boolean[1];
+            // a gate update of the same spot waits for the repair, and the other way round
+            changedAt.compute(parkingNumber, (spot, stamp) -> {
+                if (stamp != null && stamp > since) {
+                    return stamp;
+                }
+                State current = state;
+                ParkingSpot parkingSpot = inTable.get(parkingNumber);
+                if (parkingSpot == null) {
+                    applied[0] = current.spotTypes.containsKey(parkingNumber);
+                    current.remove(parkingNumber);
+                } else if (differs(current, parkingSpot)) {
+                    applied[0] = true;
+                    current.put(parkingSpot);
+                }
+                return stamp;
+            });
+            if (applied[0]) {
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+
+    private static boolean differs(State current, ParkingSpot parkingSpot) {
+        return current.spotTypes.get(parkingSpot.getId()) != parkingSpot.getParkingType()
+                || current.isAvailable(parkingSpot.getId()) != parkingSpot.isAvailable();
+    }
+
+    private boolean isUnchangedSince(int parkingNumber, long since) {
+        Long stamp = changedAt.get(parkingNumber);
+        return stamp == null || stamp <= since;
+    }
+}
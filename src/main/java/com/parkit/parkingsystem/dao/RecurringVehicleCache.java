@@ -0,0 +1,149 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of vehicle registration number to number of completed visits.
+ * The entry budget is derived from a memory budget in bytes, entries expire after a TTL,
+ * and the cache is split in segments so concurrent gates rarely wait on the same lock.
+ */
+public class RecurringVehicleCache {
+
+    /** Rough heap cost of one entry: map node, key String of ~10 chars and value holder. */
+    public static final int ESTIMATED_ENTRY_BYTES = 160;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RecurringVehicleCache(long maxBytes, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        int entriesPerSegment = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / ESTIMATED_ENTRY_BYTES / SEGMENTS));
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(entriesPerSegment);
+        }
+    }
+
+    /**
+     * @return the cached number of completed visits, or null when absent or expired
+     */
+    public Integer get(String vehicleRegNumber) {
+        Segment segment = segmentFor(vehicleRegNumber);
+        synchronized (segment) {
+            CachedCount cached = segment.get(vehicleRegNumber);
+            if (cached != null && System.currentTimeMillis() - cached.loadedAt <= ttlMillis) {
+                hits.increment();
+                return cached.count;
+            }
+            if (cached != null) {
+                segment.remove(vehicleRegNumber);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a count read from the database. Counts only grow, so a larger count already cached, from a visit
+     * counted by {@link #incrementIfPresent} while the read was running, is kept.
+     */
+    public void put(String vehicleRegNumber, int count) {
+        Segment segment = segmentFor(vehicleRegNumber);
+        long now = System.currentTimeMillis();
+        synchronized (segment) {
+            CachedCount cached = segment.get(vehicleRegNumber);
+            if (cached != null && now - cached.loadedAt <= ttlMillis && cached.count >= count) {
+                return;
+            }
+            segment.put(vehicleRegNumber, new CachedCount(count, now));
+        }
+    }
+
+    /**
+     * Counts one more completed visit for a vehicle already in the cache. Absent vehicles are left out,
+     * their count is loaded from the database on the next lookup.
+     */
+    public void incrementIfPresent(String vehicleRegNumber) {
+        Segment segment = segmentFor(vehicleRegNumber);
+        synchronized (segment) {
+            CachedCount cached = segment.get(vehicleRegNumber);
+            if (cached != null) {
+                cached.count++;
+            }
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long lookups = getHitCount() + getMissCount();
+        return lookups == 0 ? 0 : (double) getHitCount() / lookups;
+    }
+
+    private Segment segmentFor(String vehicleRegNumber) {
+        int hash = vehicleRegNumber.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static class CachedCount {
+        private int count;
+        private final long loadedAt;
+
+        private CachedCount(int count, long loadedAt) {
+            this.count = count;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private class Segment extends LinkedHashMap<String, CachedCount> {
+        private final int maxEntries;
+
+        private Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
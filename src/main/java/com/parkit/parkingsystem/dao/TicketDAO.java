@@ -3,6 +3,8 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import org.apache.logging.log4j.LogManager;
@@ -11,19 +13,510 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TicketDAO {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+    private static final LatencyHistogram INSERT_TIMER = Metrics.timer("dao.ticket.insert");
+    private static final LatencyHistogram GET_TIMER = Metrics.timer("dao.ticket.get");
+    private static final LatencyHistogram GET_LAST_TIMER = Metrics.timer("dao.ticket.getLast");
+    private static final LatencyHistogram COUNT_TIMER = Metrics.timer("dao.ticket.count");
+    private static final LatencyHistogram INCREMENT_VISITS_TIMER = Metrics.timer("dao.ticket.incrementVisits");
+    private static final LatencyHistogram UPDATE_TIMER = Metrics.timer("dao.ticket.update");
+    private static final LongAdder TICKETS_CLOSED = Metrics.counter("tickets.closed");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    public RecurringVehicleCache recurringVehicleCache = new RecurringVehicleCache(
+            Long.getLong("parkit.recurringCache.maxBytes", 64L * 1024 * 1024),
+            Long.getLong("parkit.recurringCache.ttlMillis", 60 * 60 * 1000L));
+
+    private final OpenTicketStore openTicketStore = new OpenTicketStore();
+
+    public UnitOfWork beginUnitOfWork() throws ClassNotFoundException, SQLException {
+        return new UnitOfWork(dataBaseConfig);
+    }
+
     public boolean saveTicket(Ticket ticket){
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            boolean result = saveTicket(unitOfWork, ticket);
+            unitOfWork.commit();
+            return result;
+        }catch (Exception ex){
+            logger.error("Error fetching next available slot",ex);
+        }
+        return false;
+    }
+
+    /**
+     * Inserts the ticket and sets its generated ID.
+     */
+    public boolean saveTicket(UnitOfWork unitOfWork, final Ticket ticket) throws SQLException {
+        boolean result = insertTicket(unitOfWork.getConnection(), ticket);
+        if (ticket.getOutTime() != null) {
+            incrementNbTicket(unitOfWork, ticket.getVehicleRegNumber());
+        } else if (result && openTicketStore.isLoaded()) {
+            unitOfWork.afterCommit(() -> openTicketStore.add(ticket));
+        }
+        return result;
+    }
+
+    public Ticket getTicket(String vehicleRegNumber) {
+        if (openTicketStore.isLoaded()) {
+            Ticket ticket = openTicketStore.get(vehicleRegNumber);
+            if (ticket != null) {
+                ticket.setNbPreviousTickets(getNbTicket(vehicleRegNumber));
+            }
+            return ticket;
+        }
+        Connection con = null;
+        Ticket ticket = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ticket = queryTicket(con, vehicleRegNumber);
+        }catch (Exception ex){
+            logger.error("Error fetching ticket",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return ticket;
+    }
+
+    public Ticket getTicket(UnitOfWork unitOfWork, String vehicleRegNumber) throws SQLException {
+        if (openTicketStore.isLoaded()) {
+            Ticket ticket = openTicketStore.get(vehicleRegNumber);
+            if (ticket != null) {
+                ticket.setNbPreviousTickets(getNbTicket(unitOfWork, vehicleRegNumber));
+            }
+            return ticket;
+        }
+        return queryTicket(unitOfWork.getConnection(), vehicleRegNumber);
+    }
+
+    public int getNbTicket(String vehicleRegNumber) {
+        Integer cachedCount = recurringVehicleCache.get(vehicleRegNumber);
+        if (cachedCount != null) {
+            return cachedCount;
+        }
+        Connection con = null;
+        int count = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            count = countTickets(con, vehicleRegNumber);
+            recurringVehicleCache.put(vehicleRegNumber, count);
+        } catch (Exception ex) {
+            logger.error("Error counting tickets for vehicle", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return count;
+    }
+
+    public int getNbTicket(UnitOfWork unitOfWork, String vehicleRegNumber) throws SQLException {
+        Integer cachedCount = recurringVehicleCache.get(vehicleRegNumber);
+        if (cachedCount != null) {
+            return cachedCount;
+        }
+        int count = countTickets(unitOfWork.getConnection(), vehicleRegNumber);
+        recurringVehicleCache.put(vehicleRegNumber, count);
+        return count;
+    }
+    
+    public boolean updateTicket(Ticket ticket) {
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            boolean updated = updateTicket(unitOfWork, ticket);
+            unitOfWork.commit();
+            return updated;
+        }catch (Exception ex){
+            logger.error("Error saving ticket info",ex);
+        }
+        return false;
+    }
+
+    /**
+     * Closes the ticket and counts the visit for the recurring-customer discount.
+     */
+    public boolean updateTicket(UnitOfWork unitOfWork, Ticket ticket) throws SQLException {
+        final String vehicleRegNumber = ticket.getVehicleRegNumber();
+        final int id = ticket.getId();
+        if (updateTicketRow(unitOfWork.getConnection(), ticket) != 1) {
+            // the row is gone, the open ticket store must not hand it out again
+            openTicketStore.remove(vehicleRegNumber, id);
+            return false;
+        }
+        incrementNbTicket(unitOfWork, vehicleRegNumber);
+        unitOfWork.afterCommit(() -> {
+            openTicketStore.remove(vehicleRegNumber, id);
+            TICKETS_CLOSED.increment();
+        });
+        return true;
+    }
+
+    /**
+     * Adds the ticket to the open tickets in memory only; the ticket table is written when the journal is flushed.
+     */
+    public void addOpenTicket(Ticket ticket) {
+        openTicketStore.add(ticket);
+    }
+
+    /**
+     * Takes the oldest open ticket of the vehicle out of the open tickets in memory only.
+     * @return the ticket with its number of previous visits, or null if the vehicle has none
+     */
+    public Ticket pollOpenTicket(String vehicleRegNumber) {
+        Ticket ticket = openTicketStore.poll(vehicleRegNumber);
+        if (ticket != null) {
+            ticket.setNbPreviousTickets(getNbTicket(vehicleRegNumber));
+        }
+        return ticket;
+    }
+
+    /**
+     * Removes the oldest open ticket of the vehicle from memory, when a journaled exit is replayed.
+     * @return false if the vehicle has no open ticket in memory
+     */
+    public boolean removeOpenTicket(String vehicleRegNumber) {
+        return openTicketStore.poll(vehicleRegNumber) != null;
+    }
+
+    /**
+     * Loads the open tickets in memory from tickets saved earlier instead of the ticket table.
+     */
+    public void loadOpenTickets(Collection<Ticket> tickets) {
+        openTicketStore.load(tickets);
+    }
+
+    /**
+     * @return a copy of the open tickets in memory, or null if they are not loaded
+     */
+    public List<Ticket> getOpenTicketsInMemory() {
+        return openTicketStore.isLoaded() ? openTicketStore.getAll() : null;
+    }
+
+    /**
+     * Inserts a journaled entry, leaving the open tickets in memory untouched.
+     */
+    public boolean insertJournaledTicket(UnitOfWork unitOfWork, Ticket ticket) throws SQLException {
+        return insertTicket(unitOfWork.getConnection(), ticket);
+    }
+
+    /**
+     * Closes the oldest open ticket of the vehicle for a journaled exit, whose ticket ID may not have been
+     * known at the gate, and counts the visit.
+     * @return false if the vehicle has no open ticket in the table
+     */
+    public boolean closeJournaledTicket(UnitOfWork unitOfWork, Ticket ticket) throws SQLException {
+        Connection con = unitOfWork.getConnection();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_OPEN_TICKET_ID);
+            ps.setString(1, ticket.getVehicleRegNumber());
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                return false;
+            }
+            ticket.setId(rs.getInt(1));
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+        if (updateTicketRow(con, ticket) != 1) {
+            return false;
+        }
+        incrementNbTicket(unitOfWork, ticket.getVehicleRegNumber());
+        unitOfWork.afterCommit(TICKETS_CLOSED::increment);
+        return true;
+    }
+
+    /**
+     * @return the sequence number of the last journal record written to the database, 0 if none, -1 on error
+     */
+    public long getJournalCheckpoint(String journalName) {
         Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_JOURNAL_CHECKPOINT);
+            ps.setString(1, journalName);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (Exception ex) {
+            logger.error("Error reading the journal checkpoint", ex);
+            return -1;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public void saveJournalCheckpoint(UnitOfWork unitOfWork, String journalName, long seq) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(unitOfWork.getConnection(), DBConstants.SAVE_JOURNAL_CHECKPOINT);
+            ps.setString(1, journalName);
+            ps.setLong(2, seq);
+            ps.setLong(3, seq);
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * Loads the open tickets in memory so that getTicket no longer queries the ticket table.
+     * Only for a single application instance: exits recorded by another instance are not seen.
+     */
+    public boolean loadOpenTickets() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_OPEN_TICKETS);
+            rs = ps.executeQuery();
+            List<Ticket> tickets = new ArrayList<>();
+            while (rs.next()) {
+                Ticket ticket = new Ticket();
+                ticket.setId(rs.getInt(1));
+                ticket.setParkingSpot(new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(3)), false));
+                ticket.setVehicleRegNumber(rs.getString(4));
+                ticket.setPrice(rs.getDouble(5));
+                ticket.setInTime(rs.getTimestamp(6));
+                tickets.add(ticket);
+            }
+            openTicketStore.load(tickets);
+            logger.info("Loaded " + tickets.size() + " open tickets in memory");
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error loading open tickets", ex);
+            return false;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Receives closed tickets streamed by {@link #forEachClosedTicket}.
+     */
+    public interface ClosedTicketHandler {
+        /**
+         * @param recurring whether the vehicle had parked before this ticket
+         */
+        void onTicket(int id, long inMillis, long outMillis, ParkingType parkingType, boolean recurring, double price) throws Exception;
+    }
+
+    /**
+     * Streams the closed tickets with an ID in [fromId, toId], in ID order, without loading them all in memory.
+     * On MySQL the fetch size is honoured thanks to the {@code useCursorFetch=true} added by {@link DataBaseConfig}.
+     */
+    public void forEachClosedTicket(int fromId, int toId, int fetchSize, ClosedTicketHandler handler) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            // not taken from the statement cache: the fetch size and the open cursor belong to this scan only
+            ps = con.prepareStatement(DBConstants.GET_CLOSED_TICKETS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setInt(1, fromId);
+            ps.setInt(2, toId);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                handler.onTicket(rs.getInt(1), rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime(),
+                        ParkingType.valueOf(rs.getString(4)), rs.getBoolean(6), rs.getDouble(5));
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Receives tickets streamed by {@link #forEachTicketInPeriod}.
+     */
+    public interface TicketRowHandler {
+        /**
+         * @param outMillis exit time, -1 while the vehicle is still parked
+         */
+        void onTicket(int parkingNumber, ParkingType parkingType, long inMillis, long outMillis, double price) throws Exception;
+    }
+
+    /**
+     * Streams every ticket overlapping [fromMillis, toMillis) through a forward-only, read-only cursor.
+     */
+    public void forEachTicketInPeriod(long fromMillis, long toMillis, int fetchSize, TicketRowHandler handler) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKETS_IN_PERIOD, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setTimestamp(1, new Timestamp(toMillis));
+            ps.setTimestamp(2, new Timestamp(fromMillis));
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                Timestamp outTime = rs.getTimestamp(4);
+                handler.onTicket(rs.getInt(1), ParkingType.valueOf(rs.getString(2)), rs.getTimestamp(3).getTime(),
+                        outTime == null ? -1 : outTime.getTime(), rs.getDouble(5));
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public long countClosedTickets(int fromId, int toId) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.COUNT_CLOSED_TICKETS);
+            ps.setInt(1, fromId);
+            ps.setInt(2, toId);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (Exception ex) {
+            logger.error("Error counting closed tickets", ex);
+            return -1;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Writes the first count prices in one JDBC batch and one transaction.
+     */
+    public void updatePrices(int[] ids, double[] prices, int count) throws Exception {
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            PreparedStatement ps = null;
+            try {
+                ps = dataBaseConfig.prepareStatement(unitOfWork.getConnection(), DBConstants.UPDATE_TICKET_PRICE);
+                for (int i = 0; i < count; i++) {
+                    ps.setDouble(1, prices[i]);
+                    ps.setInt(2, ids[i]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            } finally {
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            unitOfWork.commit();
+        }
+    }
+
+    /**
+     * Receives tickets streamed by {@link #forEachTicketToArchive}.
+     */
+    public interface ArchivedTicketHandler {
+        void onTicket(int id, int parkingNumber, String vehicleRegNumber, double price, long inMillis, long outMillis) throws Exception;
+    }
+
+    /**
+     * Streams, in ID order, at most limit tickets with an ID above afterId that were closed before cutoffMillis.
+     * @return the number of tickets streamed
+     */
+    public int forEachTicketToArchive(int afterId, long cutoffMillis, int limit, ArchivedTicketHandler handler) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        int count = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_TICKETS_TO_ARCHIVE);
+            ps.setInt(1, afterId);
+            ps.setTimestamp(2, new Timestamp(cutoffMillis));
+            ps.setInt(3, limit);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                handler.onTicket(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getDouble(4),
+                        rs.getTimestamp(5).getTime(), rs.getTimestamp(6).getTime());
+                count++;
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the tickets with an ID in [fromId, toId] closed before cutoffMillis and adds them to the
+     * archived visits of their vehicle, in one transaction. The visit counts used for the recurring
+     * discount are left untouched. Running it again on the same range deletes nothing more.
+     * @return the number of tickets deleted
+     */
+    public int deleteArchivedTickets(int fromId, int toId, long cutoffMillis) throws Exception {
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            Connection con = unitOfWork.getConnection();
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            PreparedStatement update = null;
+            int deleted;
+            try {
+                ps = dataBaseConfig.prepareStatement(con, DBConstants.COUNT_ARCHIVED_TICKETS_BY_VEHICLE);
+                ps.setInt(1, fromId);
+                ps.setInt(2, toId);
+                ps.setTimestamp(3, new Timestamp(cutoffMillis));
+                rs = ps.executeQuery();
+                update = dataBaseConfig.prepareStatement(con, DBConstants.ADD_ARCHIVED_VISITS);
+                while (rs.next()) {
+                    int nbArchived = rs.getInt(2);
+                    update.setString(1, rs.getString(1));
+                    update.setInt(2, nbArchived);
+                    update.setInt(3, nbArchived);
+                    update.setInt(4, nbArchived);
+                    update.addBatch();
+                }
+                update.executeBatch();
+            } finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+                dataBaseConfig.closePreparedStatement(update);
+            }
+            PreparedStatement delete = null;
+            try {
+                delete = dataBaseConfig.prepareStatement(con, DBConstants.DELETE_ARCHIVED_TICKETS);
+                delete.setInt(1, fromId);
+                delete.setInt(2, toId);
+                delete.setTimestamp(3, new Timestamp(cutoffMillis));
+                deleted = delete.executeUpdate();
+            } finally {
+                dataBaseConfig.closePreparedStatement(delete);
+            }
+            unitOfWork.commit();
+            return deleted;
+        }
+    }
+
+    private boolean insertTicket(Connection con, Ticket ticket) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             //ps.setInt(1,ticket.getId());
             ps.setInt(1,ticket.getParkingSpot().getId());
@@ -31,24 +524,34 @@ public class TicketDAO {
             ps.setDouble(3, ticket.getPrice());
             ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
             ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
-            return ps.execute();
-        }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
-        }finally {
-            dataBaseConfig.closeConnection(con);
+            if (ps.executeUpdate() != 1) {
+                return false;
+            }
+            rs = ps.getGeneratedKeys();
+            if (rs.next()) {
+                ticket.setId(rs.getInt(1));
+            }
+            return true;
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            INSERT_TIMER.recordSince(start);
         }
-        return false;
     }
 
-    public Ticket getTicket(String vehicleRegNumber) {
-        Connection con = null;
+    private Ticket queryTicket(Connection con, String vehicleRegNumber) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         Ticket ticket = null;
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_TICKET);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             if(rs.next()){
                 ticket = new Ticket();
                 ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
@@ -58,70 +561,84 @@ public class TicketDAO {
                 ticket.setPrice(rs.getDouble(3));
                 ticket.setInTime(rs.getTimestamp(4));
                 ticket.setOutTime(rs.getTimestamp(5));
+                ticket.setNbPreviousTickets(rs.getInt(7));
             }
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
-        }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
-        }finally {
-            dataBaseConfig.closeConnection(con);
+            GET_TIMER.recordSince(start);
         }
         return ticket;
     }
 
-
-    public int getNbTicket(String vehicleRegNumber) {
-        Connection con = null;
-        int count = 0;
+    private int countTickets(Connection con, String vehicleRegNumber) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NB_TICKET);
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_NB_TICKET);
             ps.setString(1, vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {                                                                 
-                count = rs.getInt(1);                                                        
-            }
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
-        } catch (Exception ex) {
-            logger.error("Error counting tickets for vehicle", ex);
+            COUNT_TIMER.recordSince(start);
+        }
+    }
+
+    private void incrementNbTicket(UnitOfWork unitOfWork, final String vehicleRegNumber) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
+        try {
+            ps = dataBaseConfig.prepareStatement(unitOfWork.getConnection(), DBConstants.INCREMENT_NB_TICKET);
+            ps.setString(1, vehicleRegNumber);
+            ps.executeUpdate();
+            unitOfWork.afterCommit(() -> recurringVehicleCache.incrementIfPresent(vehicleRegNumber));
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
         } finally {
-            dataBaseConfig.closeConnection(con);
+            dataBaseConfig.closePreparedStatement(ps);
+            INCREMENT_VISITS_TIMER.recordSince(start);
         }
-        return count;
     }
-    
-    public boolean updateTicket(Ticket ticket) {
-        Connection con = null;
+
+    private int updateTicketRow(Connection con, Ticket ticket) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement ps = null;
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.UPDATE_TICKET);
             ps.setDouble(1, ticket.getPrice());
             ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
             ps.setInt(3,ticket.getId());
-            ps.execute();
-            return true;
-        }catch (Exception ex){
-            logger.error("Error saving ticket info",ex);
-        }finally {
-            dataBaseConfig.closeConnection(con);
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            Metrics.DB_ERRORS.increment();
+            throw e;
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            UPDATE_TIMER.recordSince(start);
         }
-        return false;
     }
     
     public Ticket getTicketWithOutTime(String vehicleRegNumber) {
+        long start = System.nanoTime();
         Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         Ticket ticket = null;
         try {
             con = dataBaseConfig.getConnection();
-            String sql = "SELECT t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE " +
-                         "FROM ticket t, parking p " +
-                         "WHERE p.parking_number = t.parking_number " +
-                         "AND t.VEHICLE_REG_NUMBER = ? " +
-                         "ORDER BY t.IN_TIME DESC LIMIT 1";
-            PreparedStatement ps = con.prepareStatement(sql);
+            ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_LAST_TICKET);
             ps.setString(1, vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             if (rs.next()) {
                 ticket = new Ticket();
                 ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false);
@@ -132,12 +649,16 @@ public class TicketDAO {
                 ticket.setInTime(rs.getTimestamp(4));
                 ticket.setOutTime(rs.getTimestamp(5));
             }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
         } catch (Exception ex) {
+            if (con != null && ex instanceof SQLException) {
+                Metrics.DB_ERRORS.increment();
+            }
             logger.error("Error fetching ticket with outTime", ex);
         } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
+            GET_LAST_TIMER.recordSince(start);
         }
         return ticket;
     }
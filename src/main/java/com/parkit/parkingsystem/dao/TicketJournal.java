@@ -0,0 +1,649 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.DataTruncation;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of gate entries and exits. An append returns once its record is on disk, and the
+ * records are written to the database later, in batches, by a {@link Sink}.
+ * <p>
+ * Appends are queued to a single writer thread. It writes all queued records with one write and one
+ * {@code force}, so concurrent gates share an fsync (group commit). The number of the last record written
+ * to the database is kept in the database by the sink. On restart the records after it are handed to the
+ * sink again with {@link #recover}. A record torn by a crash fails its checksum and the file is cut there.
+ * Once every record has reached the database and the file grew past maxBytes, it is emptied.
+ * <p>
+ * A record the database rejects for its content, not because it is unavailable, is moved with its sequence
+ * number to a dead-letter file next to the journal ({@code <file>.dead}) so the records after it are not
+ * held back. The records listed there are skipped on restart.
+ * <p>
+ * A snapshot of the lot taken at a sequence number can be brought up to date with the records after it,
+ * read at {@link #open(Path, long, long, long)} as long as the file was not emptied since.
+ */
+public class TicketJournal implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketJournal");
+
+    private static final LatencyHistogram APPEND_TIMER = Metrics.timer("journal.append");
+    private static final LatencyHistogram FLUSH_TIMER = Metrics.timer("journal.flush");
+    private static final LongAdder FSYNCS = Metrics.counter("journal.fsyncs");
+    private static final LongAdder DEAD_LETTERS = Metrics.counter("journal.deadLetters");
+
+    // record: length and CRC32 of the body, then the body
+    private static final int HEADER_SIZE = 8;
+    private static final int FIXED_BODY_SIZE = 8 + 1 + 1 + 4 + 8 + 8 + 8 + 2;
+    private static final int MAX_BODY_SIZE = FIXED_BODY_SIZE + Short.MAX_VALUE;
+    private static final int MAX_GROUP_SIZE = 1024;
+    private static final ParkingType[] TYPES = ParkingType.values();
+
+    /**
+     * Writes records to the database. Every record of the list must be written in one transaction,
+     * together with the sequence number of the last one. A record rejected by the database for its data
+     * (SQL state class 22 or 23) is set aside in the dead-letter file; any other failure is retried.
+     */
+    public interface Sink {
+        void apply(List<Record> records) throws Exception;
+    }
+
+    private final Path file;
+    private final Path deadLetterFile;
+    private final FileChannel channel;
+    private final long maxBytes;
+    private final Object lock = new Object();
+    // records on disk, not yet in the database; guarded by lock
+    private final ArrayDeque<Record> pending = new ArrayDeque<>();
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+    // sequence numbers after appliedSeq found in the dead-letter file at open
+    private final Set<Long> deadSeqs = new HashSet<>();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private long nextSeq;
+    private final long snapshotSeq;
+    private List<Record> snapshotRecords;
+    private volatile long appliedSeq;
+    private volatile IOException failure;
+    private boolean closed; // guarded by appends
+    private ScheduledExecutorService flusher;
+
+    private TicketJournal(Path file, FileChannel channel, long appliedSeq, long maxBytes, long snapshotSeq) {
+        this.file = file;
+        this.deadLetterFile = file.resolveSibling(file.getFileName() + ".dead");
+        this.channel = channel;
+        this.appliedSeq = appliedSeq;
+        this.nextSeq = appliedSeq + 1;
+        this.maxBytes = maxBytes;
+        this.snapshotSeq = snapshotSeq;
+        this.writer = new Thread(this::writeLoop, "ticket-journal-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal, creating the file if needed, and keeps the records after appliedSeq to be recovered.
+     * @param appliedSeq sequence number of the last record already in the database, 0 if none
+     */
+    public static TicketJournal open(Path file, long appliedSeq, long maxBytes) throws IOException {
+        return open(file, appliedSeq, maxBytes, -1);
+    }
+
+    /**
+     * Same as {@link #open(Path, long, long)}, also keeping every record after snapshotSeq for
+     * {@link #takeRecordsAfterSnapshot}, whether or not it is already in the database.
+     * @param snapshotSeq sequence number of the last record reflected by a snapshot, -1 if none
+     */
+    public static TicketJournal open(Path file, long appliedSeq, long maxBytes, long snapshotSeq) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        TicketJournal journal = new TicketJournal(file, channel, appliedSeq, maxBytes, snapshotSeq);
+        try {
+            journal.readRecords();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        journal.writer.start();
+        Metrics.gauge("journal.pending", journal::getPendingCount);
+        return journal;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the plate is empty or does not fit the ticket table
+     */
+    public Record appendEntry(String vehicleRegNumber, ParkingType parkingType, int parkingNumber, long inMillis) throws IOException {
+        return append(new Record(0, Record.ENTRY, vehicleRegNumber, parkingType, parkingNumber, inMillis, Record.NO_OUT_TIME, 0));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the plate is empty or does not fit the ticket table
+     */
+    public Record appendExit(String vehicleRegNumber, ParkingType parkingType, int parkingNumber, long inMillis,
+                             long outMillis, double price) throws IOException {
+        return append(new Record(0, Record.EXIT, vehicleRegNumber, parkingType, parkingNumber, inMillis, outMillis, price));
+    }
+
+    /**
+     * Hands the records not yet in the database to the sink, in batches, until none is left.
+     * Called once after {@link #open}, before the gates are served.
+     * @return the number of records written to the database
+     */
+    public int recover(Sink sink, int batchSize) throws Exception {
+        int recovered = 0;
+        int flushed;
+        while ((flushed = flush(sink, batchSize)) > 0) {
+            recovered += flushed;
+        }
+        if (recovered > 0) {
+            logger.info("Recovered " + recovered + " journaled gate events from " + file);
+        }
+        return recovered;
+    }
+
+    /**
+     * Hands at most batchSize of the oldest records not yet in the database to the sink. They are kept
+     * and handed again next time if the sink fails, unless the database rejected them: the batch is then
+     * handed again one record at a time and the rejected ones are moved to the dead-letter file.
+     * @return the number of records written to the database or set aside
+     */
+    public synchronized int flush(Sink sink, int batchSize) throws Exception {
+        List<Record> batch = new ArrayList<>();
+        synchronized (lock) {
+            for (Record record : pending) {
+                if (batch.size() == batchSize) {
+                    break;
+                }
+                batch.add(record);
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        try {
+            sink.apply(batch);
+            FLUSH_TIMER.recordSince(start);
+        } catch (Exception e) {
+            if (!isRejected(e)) {
+                throw e;
+            }
+            if (batch.size() > 1) {
+                // the records before the rejected one are written on their own
+                for (int i = 0; i < batch.size(); i++) {
+                    flush(sink, 1);
+                }
+                return batch.size();
+            }
+            deadLetter(batch.get(0), e);
+        }
+        synchronized (lock) {
+            for (int i = 0; i < batch.size(); i++) {
+                pending.removeFirst();
+            }
+            appliedSeq = batch.get(batch.size() - 1).getSeq();
+            if (pending.isEmpty() && channel.size() > maxBytes) {
+                // everything is in the database: the records are no longer needed
+                channel.truncate(0);
+                channel.force(true);
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * Flushes the journal to the database on a daemon thread, periodically. Failures are logged and
+     * the records are handed again at the next run.
+     */
+    public ScheduledExecutorService startFlushing(final Sink sink, long periodMillis, final int batchSize) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                while (flush(sink, batchSize) == batchSize) {
+                    // more records are waiting
+                }
+            } catch (Exception e) {
+                logger.error("Unable to write " + getPendingCount() + " journaled gate events to the database, will retry", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        flusher = scheduler;
+        return scheduler;
+    }
+
+    public long getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    public long getAppliedSeq() {
+        return appliedSeq;
+    }
+
+    /**
+     * @return the sequence number of the last record on disk, or of the last record applied if none was appended since
+     */
+    public long getLastSeq() {
+        synchronized (lock) {
+            return nextSeq - 1;
+        }
+    }
+
+    /**
+     * Hands over, once, the records after the snapshotSeq given to {@link #open(Path, long, long, long)}.
+     * @return the records, oldest first, or null if some of them are no longer in the file or the snapshot
+     * is ahead of the journal
+     */
+    public synchronized List<Record> takeRecordsAfterSnapshot() {
+        List<Record> records = snapshotRecords;
+        snapshotRecords = null;
+        return records;
+    }
+
+    /**
+     * @return the records not yet in the database, oldest first
+     */
+    public List<Record> getPendingRecords() {
+        synchronized (lock) {
+            return new ArrayList<>(pending);
+        }
+    }
+
+    /**
+     * Stops the appends and the flushing. Records not yet in the database stay in the file for the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (appends) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // the last element ever queued: the writer writes everything before it, then stops
+            appends.add(Append.CLOSE);
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Metrics.removeGauges("journal.pending");
+        channel.close();
+    }
+
+    private Record append(Record record) throws IOException {
+        String vehicleRegNumber = record.getVehicleRegNumber();
+        if (vehicleRegNumber == null || vehicleRegNumber.isEmpty()
+                || vehicleRegNumber.length() > DBConstants.MAX_VEHICLE_REG_NUMBER_LENGTH) {
+            throw new IllegalArgumentException("Invalid vehicle registration number '" + vehicleRegNumber + "', expected 1 to "
+                    + DBConstants.MAX_VEHICLE_REG_NUMBER_LENGTH + " characters");
+        }
+        long start = System.nanoTime();
+        Append append = new Append(record);
+        synchronized (appends) {
+            if (closed) {
+                throw new IOException("Ticket journal " + file + " is closed");
+            }
+            appends.add(append);
+        }
+        try {
+            return append.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the journal");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            APPEND_TIMER.recordSince(start);
+        }
+    }
+
+    private void writeLoop() {
+        List<Append> group = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            group.clear();
+            try {
+                group.add(appends.take());
+            } catch (InterruptedException e) {
+                closing = true;
+            }
+            appends.drainTo(group, MAX_GROUP_SIZE - group.size());
+            closing |= group.remove(Append.CLOSE);
+            if (!group.isEmpty()) {
+                writeGroup(group);
+            }
+        }
+    }
+
+    private void writeGroup(List<Append> group) {
+        if (failure != null) {
+            for (Append append : group) {
+                append.done.completeExceptionally(failure);
+            }
+            return;
+        }
+        List<Record> records = new ArrayList<>(group.size());
+        synchronized (lock) {
+            try {
+                buffer.clear();
+                for (Append append : group) {
+                    Record record = append.record.withSeq(nextSeq++);
+                    encode(record);
+                    records.add(record);
+                }
+                buffer.flip();
+                long position = channel.size();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+                FSYNCS.increment();
+                pending.addAll(records);
+            } catch (IOException e) {
+                // the file can no longer be trusted to hold what was acknowledged: refuse every later append
+                logger.error("Unable to write to the ticket journal " + file, e);
+                failure = e;
+                for (Append append : group) {
+                    append.done.completeExceptionally(e);
+                }
+                return;
+            }
+        }
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).done.complete(records.get(i));
+        }
+    }
+
+    private void encode(Record record) {
+        byte[] plate = record.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        int bodySize = FIXED_BODY_SIZE + plate.length;
+        if (buffer.remaining() < HEADER_SIZE + bodySize) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + HEADER_SIZE + bodySize));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int headerPosition = buffer.position();
+        buffer.position(headerPosition + HEADER_SIZE);
+        int bodyPosition = buffer.position();
+        buffer.putLong(record.getSeq());
+        buffer.put(record.getKind());
+        buffer.put((byte) record.getParkingType().ordinal());
+        buffer.putInt(record.getParkingNumber());
+        buffer.putLong(record.getInMillis());
+        buffer.putLong(record.getOutMillis());
+        buffer.putDouble(record.getPrice());
+        buffer.putShort((short) plate.length);
+        buffer.put(plate);
+        ByteBuffer body = buffer.duplicate();
+        body.position(bodyPosition);
+        body.limit(buffer.position());
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(headerPosition, bodySize);
+        buffer.putInt(headerPosition + 4, (int) crc.getValue());
+    }
+
+    /**
+     * @return whether the database refused the data itself, so handing the records again cannot succeed
+     */
+    private static boolean isRejected(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                return cause instanceof SQLDataException || cause instanceof SQLIntegrityConstraintViolationException
+                        || cause instanceof DataTruncation || (state != null && (state.startsWith("22") || state.startsWith("23")));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the record to the dead-letter file, one tab-separated line starting with its sequence number.
+     */
+    private void deadLetter(Record record, Exception e) throws IOException {
+        String line = record.getSeq() + "\t" + (record.isEntry() ? "ENTRY" : "EXIT") + "\t" + record.getVehicleRegNumber()
+                + "\t" + record.getParkingType() + "\t" + record.getParkingNumber() + "\t" + record.getInMillis()
+                + "\t" + record.getOutMillis() + "\t" + record.getPrice() + "\t" + String.valueOf(e.getMessage()).replaceAll("\\s+", " ") + "\n";
+        try (FileChannel deadLetters = FileChannel.open(deadLetterFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                deadLetters.write(bytes);
+            }
+            deadLetters.force(true);
+        }
+        DEAD_LETTERS.increment();
+        logger.error("Journaled gate event " + record + " rejected by the database, moved to " + deadLetterFile, e);
+    }
+
+    /**
+     * Reads the sequence numbers of the dead-letter file, ignoring a last line torn by a crash.
+     * @return the highest one, 0 if none
+     */
+    private long readDeadLetters() throws IOException {
+        if (!Files.exists(deadLetterFile)) {
+            return 0;
+        }
+        String content = new String(Files.readAllBytes(deadLetterFile), StandardCharsets.UTF_8);
+        long maxSeq = 0;
+        int lineStart = 0;
+        int lineEnd;
+        while ((lineEnd = content.indexOf('\n', lineStart)) >= 0) {
+            int tab = content.indexOf('\t', lineStart);
+            if (tab > lineStart && tab < lineEnd) {
+                try {
+                    long seq = Long.parseLong(content.substring(lineStart, tab));
+                    if (seq > appliedSeq) {
+                        deadSeqs.add(seq);
+                    }
+                    maxSeq = Math.max(maxSeq, seq);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring an invalid line of the dead-letter file " + deadLetterFile);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return maxSeq;
+    }
+
+    private void readRecords() throws IOException {
+        // a record set aside keeps its sequence number even once the journal is emptied
+        long maxDeadSeq = readDeadLetters();
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        long lastSeq = appliedSeq;
+        long firstSeq = -1;
+        int nbRecords = 0;
+        List<Record> afterSnapshot = new ArrayList<>();
+        while (position < size) {
+            header.clear();
+            if (size - position < HEADER_SIZE || channel.read(header, position) < HEADER_SIZE) {
+                break;
+            }
+            header.flip();
+            int bodySize = header.getInt();
+            int checksum = header.getInt();
+            if (bodySize < FIXED_BODY_SIZE || bodySize > MAX_BODY_SIZE || size - position - HEADER_SIZE < bodySize) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodySize);
+            while (body.hasRemaining() && channel.read(body, position + HEADER_SIZE + body.position()) > 0) {
+                // read the whole body
+            }
+            body.flip();
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            Record record = decode(body);
+            if (record.getSeq() > appliedSeq && !deadSeqs.contains(record.getSeq())) {
+                pending.add(record);
+            }
+            if (snapshotSeq >= 0 && record.getSeq() > snapshotSeq) {
+                afterSnapshot.add(record);
+            }
+            if (firstSeq < 0) {
+                firstSeq = record.getSeq();
+            }
+            lastSeq = Math.max(lastSeq, record.getSeq());
+            position += HEADER_SIZE + bodySize;
+            nbRecords++;
+        }
+        if (position < size) {
+            logger.warn("Ticket journal " + file + " cut after " + nbRecords + " records: "
+                    + (size - position) + " bytes at its end were torn by a crash");
+            channel.truncate(position);
+            channel.force(true);
+        }
+        nextSeq = Math.max(lastSeq, maxDeadSeq) + 1;
+        long oldestSeq = (firstSeq < 0) ? nextSeq : firstSeq;
+        if (snapshotSeq >= oldestSeq - 1 && snapshotSeq <= lastSeq) {
+            snapshotRecords = afterSnapshot;
+        }
+    }
+
+    private static Record decode(ByteBuffer body) {
+        long seq = body.getLong();
+        byte kind = body.get();
+        ParkingType parkingType = TYPES[body.get()];
+        int parkingNumber = body.getInt();
+        long inMillis = body.getLong();
+        long outMillis = body.getLong();
+        double price = body.getDouble();
+        byte[] plate = new byte[body.getShort()];
+        body.get(plate);
+        return new Record(seq, kind, new String(plate, StandardCharsets.UTF_8), parkingType, parkingNumber, inMillis, outMillis, price);
+    }
+
+    private static final class Append {
+        private static final Append CLOSE = new Append(null);
+
+        private final Record record;
+        private final CompletableFuture<Record> done = new CompletableFuture<>();
+
+        private Append(Record record) {
+            this.record = record;
+        }
+    }
+
+    /**
+     * A journaled entry or exit. Sequence numbers follow the order of the records in the journal.
+     */
+    public static final class Record {
+        public static final byte ENTRY = 1;
+        public static final byte EXIT = 2;
+        public static final long NO_OUT_TIME = -1;
+
+        private final long seq;
+        private final byte kind;
+        private final String vehicleRegNumber;
+        private final ParkingType parkingType;
+        private final int parkingNumber;
+        private final long inMillis;
+        private final long outMillis;
+        private final double price;
+
+        private Record(long seq, byte kind, String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+                       long inMillis, long outMillis, double price) {
+            this.seq = seq;
+            this.kind = kind;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.parkingType = parkingType;
+            this.parkingNumber = parkingNumber;
+            this.inMillis = inMillis;
+            this.outMillis = outMillis;
+            this.price = price;
+        }
+
+        private Record withSeq(long seq) {
+            return new Record(seq, kind, vehicleRegNumber, parkingType, parkingNumber, inMillis, outMillis, price);
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public byte getKind() {
+            return kind;
+        }
+
+        public boolean isEntry() {
+            return kind == ENTRY;
+        }
+
+        public String getVehicleRegNumber() {
+            return vehicleRegNumber;
+        }
+
+        public ParkingType getParkingType() {
+            return parkingType;
+        }
+
+        public int getParkingNumber() {
+            return parkingNumber;
+        }
+
+        public long getInMillis() {
+            return inMillis;
+        }
+
+        /**
+         * @return the exit time, or {@link #NO_OUT_TIME} for an entry
+         */
+        public long getOutMillis() {
+            return outMillis;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        @Override
+        public String toString() {
+            return (isEntry() ? "ENTRY" : "EXIT") + " #" + seq + " " + vehicleRegNumber + " spot " + parkingNumber;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One database transaction shared by several DAO calls.
+ * Closing it without calling {@link #commit()} rolls every statement back.
+ * In-memory state mirroring the database is only touched once the outcome is known,
+ * through {@link #afterCommit(Runnable)} and {@link #afterRollback(Runnable)}.
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("UnitOfWork");
+
+    private final DataBaseConfig dataBaseConfig;
+    private final Connection connection;
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private final List<Runnable> afterRollback = new ArrayList<>();
+    private boolean committed;
+
+    public UnitOfWork(DataBaseConfig dataBaseConfig) throws ClassNotFoundException, SQLException {
+        this.dataBaseConfig = dataBaseConfig;
+        this.connection = dataBaseConfig.getConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            dataBaseConfig.closeConnection(connection);
+            throw e;
+        }
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public void afterCommit(Runnable action) {
+        afterCommit.add(action);
+    }
+
+    public void afterRollback(Runnable action) {
+        afterRollback.add(action);
+    }
+
+    public void commit() throws SQLException {
+        connection.commit();
+        committed = true;
+        for (Runnable action : afterCommit) {
+            action.run();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!committed) {
+                connection.rollback();
+                for (Runnable action : afterRollback) {
+                    action.run();
+                }
+            }
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.error("Error while ending transaction", e);
+        } finally {
+            dataBaseConfig.closeConnection(connection);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of latency timers, counters and gauges, exposed through JMX under
+ * {@code com.parkit.parkingsystem:type=Metrics} and dumped periodically as text by the "Metrics" logger.
+ * <p>
+ * Hot paths keep the timers and counters they use in static fields, so recording never looks up the registry.
+ */
+public final class Metrics {
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    private static final String OBJECT_NAME = "com.parkit.parkingsystem:type=Metrics";
+
+    private static final ConcurrentMap<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static final LongAdder DB_ERRORS = counter("db.errors");
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a value read each time the metrics are dumped or queried; a gauge of the same name is replaced.
+     */
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static void removeGauges(String prefix) {
+        gauges.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    public static Map<String, LatencyHistogram.Snapshot> snapshotTimers() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> timer : timers.entrySet()) {
+            snapshots.put(timer.getKey(), timer.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        return values;
+    }
+
+    public static Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            try {
+                values.put(gauge.getKey(), gauge.getValue().getAsLong());
+            } catch (RuntimeException e) {
+                logger.warn("Unable to read gauge " + gauge.getKey(), e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * One line per timer with its count and latency percentiles in microseconds, then the counters and gauges.
+     */
+    public static String format(Map<String, LatencyHistogram.Snapshot> timerSnapshots) {
+        StringBuilder dump = new StringBuilder();
+        dump.append(String.format(Locale.ROOT, "%-32s %10s %10s %10s %10s %10s %10s %10s%n",
+                "timer (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Map.Entry<String, LatencyHistogram.Snapshot> timer : timerSnapshots.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = timer.getValue();
+            dump.append(String.format(Locale.ROOT, "%-32s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    timer.getKey(), snapshot.getCount(), snapshot.getMeanNanos() / 1000,
+                    snapshot.getValueAtPercentile(50) / 1000.0, snapshot.getValueAtPercentile(90) / 1000.0,
+                    snapshot.getValueAtPercentile(99) / 1000.0, snapshot.getValueAtPercentile(99.9) / 1000.0,
+                    snapshot.getMaxNanos() / 1000.0));
+        }
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            dump.append(String.format(Locale.ROOT, "%-32s %10d%n", counter.getKey(), counter.getValue()));
+        }
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+            dump.append(String.format(Locale.ROOT, "%-32s %10d%n", gauge.getKey(), gauge.getValue()));
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Logs the latencies of each period, not the ones accumulated since startup, so that a p99 outlier
+     * shows up in the period it happened.
+     */
+    public static ScheduledExecutorService startDump(long periodMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Map<String, LatencyHistogram.Snapshot> previous = new HashMap<>();
+        scheduler.scheduleWithFixedDelay(() -> {
+            Map<String, LatencyHistogram.Snapshot> interval = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram.Snapshot> timer : snapshotTimers().entrySet()) {
+                LatencyHistogram.Snapshot last = previous.put(timer.getKey(), timer.getValue());
+                interval.put(timer.getKey(), last == null ? timer.getValue() : timer.getValue().minus(last));
+            }
+            logger.info("Metrics of the last " + periodMillis + "ms\n" + format(interval));
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    /**
+     * Registers the metrics MXBean on the platform MBean server. Registering twice is harmless.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new MetricsMXBeanImpl(), objectName);
+            }
+        } catch (Exception e) {
+            logger.error("Unable to register the metrics MXBean", e);
+        }
+    }
+
+    /**
+     * Starts what the {@code parkit.metrics.*} system properties ask for: the MXBean unless
+     * {@code parkit.metrics.jmx=false}, and the dump every {@code parkit.metrics.dumpMillis} (default 60000, 0 disables it).
+     */
+    public static void startFromSystemProperties() {
+        if (Boolean.parseBoolean(System.getProperty("parkit.metrics.jmx", "true"))) {
+            registerMBean();
+        }
+        long dumpMillis = Long.getLong("parkit.metrics.dumpMillis", 60 * 1000L);
+        if (dumpMillis > 0) {
+            startDump(dumpMillis);
+        }
+    }
+
+    private static class MetricsMXBeanImpl implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounters() {
+            return Metrics.getCounters();
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return Metrics.getGauges();
+        }
+
+        @Override
+        public Map<String, Double> getP99Micros() {
+            return percentileMicros(99);
+        }
+
+        @Override
+        public Map<String, Double> getP999Micros() {
+            return percentileMicros(99.9);
+        }
+
+        @Override
+        public Map<String, Double> getMaxMicros() {
+            Map<String, Double> values = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram.Snapshot> timer : snapshotTimers().entrySet()) {
+                values.put(timer.getKey(), timer.getValue().getMaxNanos() / 1000.0);
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String, Long> getTimerCounts() {
+            Map<String, Long> values = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram.Snapshot> timer : snapshotTimers().entrySet()) {
+                values.put(timer.getKey(), timer.getValue().getCount());
+            }
+            return values;
+        }
+
+        @Override
+        public String getDump() {
+            return format(snapshotTimers());
+        }
+
+        private static Map<String, Double> percentileMicros(double percentile) {
+            Map<String, Double> values = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram.Snapshot> timer : snapshotTimers().entrySet()) {
+                values.put(timer.getKey(), timer.getValue().getValueAtPercentile(percentile) / 1000.0);
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}. Latencies are accumulated since startup.
+ */
+public interface MetricsMXBean {
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    Map<String, Long> getTimerCounts();
+
+    Map<String, Double> getP99Micros();
+
+    Map<String, Double> getP999Micros();
+
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * @return the text dump of every timer, counter and gauge
+     */
+    String getDump();
+}
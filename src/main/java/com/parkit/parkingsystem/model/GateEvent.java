@@ -0,0 +1,47 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * A vehicle passing an entry or exit gate, as recorded in the gate-controller logs.
+ */
+public class GateEvent {
+
+    public enum Direction {
+        ENTRY,
+        EXIT
+    }
+
+    private final Date time;
+    private final Direction direction;
+    private final String vehicleRegNumber;
+    private final ParkingType parkingType;
+
+    /**
+     * @param parkingType type of the vehicle, only needed on entry
+     */
+    public GateEvent(Date time, Direction direction, String vehicleRegNumber, ParkingType parkingType) {
+        this.time = time;
+        this.direction = direction;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingType = parkingType;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+}
@@ -0,0 +1,75 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+/**
+ * Outcome of a vehicle entering or leaving, as returned by the headless parking service.
+ */
+public class ParkingResult {
+
+    public enum Status {
+        OK,
+        NO_SPOT_AVAILABLE,
+        TICKET_NOT_FOUND,
+        UPDATE_FAILED
+    }
+
+    private final Status status;
+    private final Ticket ticket;
+
+    private ParkingResult(Status status, Ticket ticket) {
+        this.status = status;
+        this.ticket = ticket;
+    }
+
+    public static ParkingResult ok(Ticket ticket) {
+        return new ParkingResult(Status.OK, ticket);
+    }
+
+    public static ParkingResult noSpotAvailable() {
+        return new ParkingResult(Status.NO_SPOT_AVAILABLE, null);
+    }
+
+    public static ParkingResult ticketNotFound() {
+        return new ParkingResult(Status.TICKET_NOT_FOUND, null);
+    }
+
+    public static ParkingResult updateFailed(Ticket ticket) {
+        return new ParkingResult(Status.UPDATE_FAILED, ticket);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.OK;
+    }
+
+    /**
+     * @return the saved or closed ticket, null when no ticket was involved
+     */
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public int getParkingNumber() {
+        return ticket == null ? 0 : ticket.getParkingSpot().getId();
+    }
+
+    public Date getInTime() {
+        return ticket == null ? null : ticket.getInTime();
+    }
+
+    public Date getOutTime() {
+        return ticket == null ? null : ticket.getOutTime();
+    }
+
+    public double getFare() {
+        return ticket == null ? 0 : ticket.getPrice();
+    }
+
+    public boolean isRecurringUser() {
+        return ticket != null && ticket.getNbPreviousTickets() > 0;
+    }
+}
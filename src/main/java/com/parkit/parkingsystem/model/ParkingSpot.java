@@ -40,13 +40,13 @@ public class ParkingSpot {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof ParkingSpot)) return false;
         ParkingSpot that = (ParkingSpot) o;
-        return number == that.number;
+        return getId() == that.getId();
     }
 
     @Override
     public int hashCode() {
-        return number;
+        return getId();
     }
 }
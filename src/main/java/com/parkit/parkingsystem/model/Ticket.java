@@ -9,6 +9,7 @@ public class Ticket {
     private double price;
     private Date inTime;
     private Date outTime;
+    private int nbPreviousTickets;
 
     public int getId() {
         return id;
@@ -57,4 +58,15 @@ public class Ticket {
     public void setOutTime(Date outTime) {
         this.outTime = outTime;
     }
+
+    /**
+     * Number of completed visits of this vehicle, filled when the ticket is fetched for exit.
+     */
+    public int getNbPreviousTickets() {
+        return nbPreviousTickets;
+    }
+
+    public void setNbPreviousTickets(int nbPreviousTickets) {
+        this.nbPreviousTickets = nbPreviousTickets;
+    }
 }
@@ -0,0 +1,305 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tickets held column by column in primitive arrays, for simulations and reports that keep many tickets
+ * in memory. A ticket costs about 43 bytes: its times are epoch millis, its vehicle type an ordinal and its
+ * registration number a code in a dictionary holding each distinct plate once. A {@link Ticket} costs
+ * about 172 bytes with its dates, plate and spot, four times more.
+ * <p>
+ * {@link #view(int)} gives a {@link Ticket} reading and writing the columns of one row, so existing code
+ * such as {@code FareCalculatorService} runs on the store unchanged. Not thread-safe.
+ */
+public class TicketStore {
+
+    /**
+     * Out time of a ticket still open.
+     */
+    public static final long NO_OUT_TIME = -1;
+
+    private static final ParkingType[] TYPES = ParkingType.values();
+
+    private int[] ids;
+    private int[] parkingNumbers;
+    private byte[] parkingTypes;
+    private int[] plateCodes;
+    private double[] prices;
+    private long[] inMillis;
+    private long[] outMillis;
+    private int[] nbPreviousTickets;
+    private int size;
+
+    private final Map<String, Integer> plateDictionary = new HashMap<>();
+    private String[] plates = new String[16];
+
+    public TicketStore() {
+        this(1024);
+    }
+
+    public TicketStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        ids = new int[capacity];
+        parkingNumbers = new int[capacity];
+        parkingTypes = new byte[capacity];
+        plateCodes = new int[capacity];
+        prices = new double[capacity];
+        inMillis = new long[capacity];
+        outMillis = new long[capacity];
+        nbPreviousTickets = new int[capacity];
+    }
+
+    /**
+     * @param outMillis exit time, or {@link #NO_OUT_TIME} while the vehicle is parked
+     * @return the row of the ticket
+     */
+    public int add(int id, int parkingNumber, ParkingType parkingType, String vehicleRegNumber, double price,
+                   long inMillis, long outMillis, int nbPreviousTickets) {
+        if (size == ids.length) {
+            grow();
+        }
+        int row = size++;
+        ids[row] = id;
+        parkingNumbers[row] = parkingNumber;
+        parkingTypes[row] = (byte) parkingType.ordinal();
+        plateCodes[row] = encode(vehicleRegNumber);
+        prices[row] = price;
+        this.inMillis[row] = inMillis;
+        this.outMillis[row] = outMillis;
+        this.nbPreviousTickets[row] = nbPreviousTickets;
+        return row;
+    }
+
+    /**
+     * Copies the ticket into a new row.
+     */
+    public int add(Ticket ticket) {
+        return add(ticket.getId(), ticket.getParkingSpot().getId(), ticket.getParkingSpot().getParkingType(),
+                ticket.getVehicleRegNumber(), ticket.getPrice(), ticket.getInTime().getTime(),
+                ticket.getOutTime() == null ? NO_OUT_TIME : ticket.getOutTime().getTime(), ticket.getNbPreviousTickets());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct registration numbers
+     */
+    public int getNbPlates() {
+        return plateDictionary.size();
+    }
+
+    public int getId(int row) {
+        return ids[checkRow(row)];
+    }
+
+    public int getParkingNumber(int row) {
+        return parkingNumbers[checkRow(row)];
+    }
+
+    public ParkingType getParkingType(int row) {
+        return TYPES[parkingTypes[checkRow(row)]];
+    }
+
+    /**
+     * @return the dictionary code of the registration number, equal for every ticket of the same vehicle
+     */
+    public int getPlateCode(int row) {
+        return plateCodes[checkRow(row)];
+    }
+
+    public String getVehicleRegNumber(int row) {
+        return plates[plateCodes[checkRow(row)]];
+    }
+
+    public double getPrice(int row) {
+        return prices[checkRow(row)];
+    }
+
+    public void setPrice(int row, double price) {
+        prices[checkRow(row)] = price;
+    }
+
+    public long getInMillis(int row) {
+        return inMillis[checkRow(row)];
+    }
+
+    public long getOutMillis(int row) {
+        return outMillis[checkRow(row)];
+    }
+
+    public void setOutMillis(int row, long millis) {
+        outMillis[checkRow(row)] = millis;
+    }
+
+    public int getNbPreviousTickets(int row) {
+        return nbPreviousTickets[checkRow(row)];
+    }
+
+    /**
+     * @return a ticket backed by the row; one view can be moved along the rows with {@link TicketView#moveTo(int)}
+     */
+    public TicketView view(int row) {
+        return new TicketView(checkRow(row));
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        }
+        return row;
+    }
+
+    private int encode(String vehicleRegNumber) {
+        Integer code = plateDictionary.get(vehicleRegNumber);
+        if (code == null) {
+            code = plateDictionary.size();
+            if (code == plates.length) {
+                plates = Arrays.copyOf(plates, code * 2);
+            }
+            plates[code] = vehicleRegNumber;
+            plateDictionary.put(vehicleRegNumber, code);
+        }
+        return code;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        parkingNumbers = Arrays.copyOf(parkingNumbers, capacity);
+        parkingTypes = Arrays.copyOf(parkingTypes, capacity);
+        plateCodes = Arrays.copyOf(plateCodes, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        inMillis = Arrays.copyOf(inMillis, capacity);
+        outMillis = Arrays.copyOf(outMillis, capacity);
+        nbPreviousTickets = Arrays.copyOf(nbPreviousTickets, capacity);
+    }
+
+    /**
+     * Ticket reading and writing one row of the store. Dates are created on each get; setting a spot copies
+     * its number and type.
+     */
+    public final class TicketView extends Ticket {
+        private final SpotView parkingSpot = new SpotView();
+        private int row;
+
+        private TicketView(int row) {
+            this.row = row;
+        }
+
+        public TicketView moveTo(int row) {
+            this.row = checkRow(row);
+            return this;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public int getId() {
+            return ids[row];
+        }
+
+        @Override
+        public void setId(int id) {
+            ids[row] = id;
+        }
+
+        @Override
+        public ParkingSpot getParkingSpot() {
+            return parkingSpot;
+        }
+
+        @Override
+        public void setParkingSpot(ParkingSpot spot) {
+            parkingNumbers[row] = spot.getId();
+            parkingTypes[row] = (byte) spot.getParkingType().ordinal();
+        }
+
+        @Override
+        public String getVehicleRegNumber() {
+            return plates[plateCodes[row]];
+        }
+
+        @Override
+        public void setVehicleRegNumber(String vehicleRegNumber) {
+            plateCodes[row] = encode(vehicleRegNumber);
+        }
+
+        @Override
+        public double getPrice() {
+            return prices[row];
+        }
+
+        @Override
+        public void setPrice(double price) {
+            prices[row] = price;
+        }
+
+        @Override
+        public Date getInTime() {
+            return new Date(inMillis[row]);
+        }
+
+        @Override
+        public void setInTime(Date inTime) {
+            inMillis[row] = inTime.getTime();
+        }
+
+        @Override
+        public Date getOutTime() {
+            return outMillis[row] == NO_OUT_TIME ? null : new Date(outMillis[row]);
+        }
+
+        @Override
+        public void setOutTime(Date outTime) {
+            outMillis[row] = outTime == null ? NO_OUT_TIME : outTime.getTime();
+        }
+
+        @Override
+        public int getNbPreviousTickets() {
+            return nbPreviousTickets[row];
+        }
+
+        @Override
+        public void setNbPreviousTickets(int count) {
+            nbPreviousTickets[row] = count;
+        }
+
+        /**
+         * Spot of the viewed ticket. Its availability is not stored and belongs to the view.
+         */
+        private final class SpotView extends ParkingSpot {
+            private SpotView() {
+                super(0, null, false);
+            }
+
+            @Override
+            public int getId() {
+                return parkingNumbers[row];
+            }
+
+            @Override
+            public void setId(int number) {
+                parkingNumbers[row] = number;
+            }
+
+            @Override
+            public ParkingType getParkingType() {
+                return TYPES[parkingTypes[row]];
+            }
+
+            @Override
+            public void setParkingType(ParkingType parkingType) {
+                parkingTypes[row] = (byte) parkingType.ordinal();
+            }
+        }
+    }
+}
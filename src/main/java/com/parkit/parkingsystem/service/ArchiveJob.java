@@ -0,0 +1,334 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves the tickets closed before the retention window out of the {@code ticket} table into one gzipped
+ * CSV file per month of exit, {@code tickets-yyyy-MM.csv.gz}.
+ * <p>
+ * Tickets are handled in small batches, with a pause between batches so that gate traffic keeps the
+ * database. The ID range of a batch and the size of the files it appends to are saved to the checkpoint
+ * file, then the batch is appended and synced to its files, then its rows are deleted. A run that stops
+ * half way looks for the rows of the saved batch: if they are gone the batch is done, otherwise the files
+ * are truncated back to their saved size and the batch is archived again. Rows are never deleted before
+ * being on disk, and never written twice. The visit counts of {@code vehicle_visit} are kept, so the
+ * recurring discount does not change.
+ */
+public class ArchiveJob {
+
+    private static final Logger logger = LogManager.getLogger("ArchiveJob");
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM", Locale.ROOT);
+    private static final String HEADER = "id,parking_number,vehicle_reg_number,price,in_time,out_time\n";
+
+    private final TicketDAO ticketDAO;
+    private final Path archiveDirectory;
+    private final Path checkpointFile;
+    private final int retentionDays;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final ZoneId zoneId;
+
+    /**
+     * Job configured from the {@code parkit.archive.*} system properties.
+     */
+    public static ArchiveJob fromSystemProperties(TicketDAO ticketDAO) {
+        return new ArchiveJob(ticketDAO, Paths.get(System.getProperty("parkit.archive.dir", "archive")),
+                Paths.get(System.getProperty("parkit.archive.checkpoint", "archive.checkpoint")));
+    }
+
+    public ArchiveJob(TicketDAO ticketDAO, Path archiveDirectory, Path checkpointFile) {
+        this(ticketDAO, archiveDirectory, checkpointFile,
+                Integer.getInteger("parkit.archive.retentionDays", 365),
+                Integer.getInteger("parkit.archive.batchSize", 1000),
+                Long.getLong("parkit.archive.pauseMillis", 200L),
+                ZoneId.systemDefault());
+    }
+
+    public ArchiveJob(TicketDAO ticketDAO, Path archiveDirectory, Path checkpointFile,
+                      int retentionDays, int batchSize, long pauseMillis, ZoneId zoneId) {
+        this.ticketDAO = ticketDAO;
+        this.archiveDirectory = archiveDirectory;
+        this.checkpointFile = checkpointFile;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+        this.zoneId = zoneId;
+    }
+
+    /**
+     * Archives the tickets closed more than the retention window ago.
+     */
+    public Report run() throws Exception {
+        return run(System.currentTimeMillis() - retentionDays * DAY_MILLIS);
+    }
+
+    /**
+     * Archives the tickets closed before cutoffMillis. A run resuming from a checkpoint keeps the cutoff
+     * of the run that saved it.
+     */
+    public Report run(long cutoffMillis) throws Exception {
+        final Report report = new Report();
+        int lastId = 0;
+        Checkpoint checkpoint = readCheckpoint();
+        if (checkpoint != null) {
+            cutoffMillis = checkpoint.cutoffMillis;
+            lastId = resume(checkpoint);
+        }
+        Files.createDirectories(archiveDirectory);
+        final Batch batch = new Batch();
+        while (true) {
+            int count = ticketDAO.forEachTicketToArchive(lastId, cutoffMillis, batchSize, batch::add);
+            if (count == 0) {
+                break;
+            }
+            int firstId = batch.firstId;
+            writeCheckpoint(new Checkpoint(lastId, batch.lastId, cutoffMillis, batch.getFileSizes()));
+            lastId = batch.lastId;
+            report.files += batch.write();
+            report.deleted += ticketDAO.deleteArchivedTickets(firstId, lastId, cutoffMillis);
+            report.archived += count;
+            report.batches++;
+            report.lastId = lastId;
+            if (count < batchSize) {
+                break;
+            }
+            Thread.sleep(pauseMillis);
+        }
+        report.elapsedNanos = System.nanoTime() - report.startNanos;
+        if (checkpointFile != null) {
+            Files.deleteIfExists(checkpointFile);
+        }
+        logger.info("Archival done: " + report);
+        return report;
+    }
+
+    /**
+     * Runs the archival periodically on a daemon thread. A failed run is logged and retried at the next period.
+     */
+    public ScheduledExecutorService startArchiving(long periodMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-archival");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Archival stopped, the next run resumes from the checkpoint", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    /**
+     * @return the ID to archive after: the end of the saved batch if its rows were deleted, else its start
+     */
+    private int resume(Checkpoint checkpoint) throws Exception {
+        final int[] nextId = new int[1];
+        ticketDAO.forEachTicketToArchive(checkpoint.afterId, checkpoint.cutoffMillis, 1,
+                (id, parkingNumber, vehicleRegNumber, price, inMillis, outMillis) -> nextId[0] = id);
+        if (nextId[0] == 0 || nextId[0] > checkpoint.lastId) {
+            logger.info("Resuming archival after ticket " + checkpoint.lastId);
+            return checkpoint.lastId;
+        }
+        // the batch may be partly written: drop it from the files and archive it again
+        for (Map.Entry<String, Long> file : checkpoint.fileSizes.entrySet()) {
+            Path path = archiveDirectory.resolve(file.getKey());
+            if (Files.exists(path)) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(file.getValue());
+                    channel.force(true);
+                }
+            }
+        }
+        logger.info("Archiving again the tickets after " + checkpoint.afterId);
+        return checkpoint.afterId;
+    }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return null;
+        }
+        String[] fields = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim().split(",");
+        Map<String, Long> fileSizes = new TreeMap<>();
+        for (int i = 3; i + 1 < fields.length; i += 2) {
+            fileSizes.put(fields[i], Long.parseLong(fields[i + 1]));
+        }
+        return new Checkpoint(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Long.parseLong(fields[2]), fileSizes);
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        StringBuilder line = new StringBuilder();
+        line.append(checkpoint.afterId).append(',').append(checkpoint.lastId).append(',').append(checkpoint.cutoffMillis);
+        for (Map.Entry<String, Long> file : checkpoint.fileSizes.entrySet()) {
+            line.append(',').append(file.getKey()).append(',').append(file.getValue());
+        }
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(tmp, line.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Batch in progress: tickets with an ID in (afterId, lastId], and the size of the archive files before it.
+     */
+    private static class Checkpoint {
+        private final int afterId;
+        private final int lastId;
+        private final long cutoffMillis;
+        private final Map<String, Long> fileSizes;
+
+        private Checkpoint(int afterId, int lastId, long cutoffMillis, Map<String, Long> fileSizes) {
+            this.afterId = afterId;
+            this.lastId = lastId;
+            this.cutoffMillis = cutoffMillis;
+            this.fileSizes = fileSizes;
+        }
+    }
+
+    private static String fileName(String month) {
+        return "tickets-" + month + ".csv.gz";
+    }
+
+    /**
+     * CSV lines of the current batch, grouped by month of exit.
+     */
+    private class Batch {
+        private final Map<String, StringBuilder> months = new TreeMap<>();
+        private int firstId;
+        private int lastId;
+
+        private void add(int id, int parkingNumber, String vehicleRegNumber, double price, long inMillis, long outMillis) {
+            if (months.isEmpty()) {
+                firstId = id;
+            }
+            lastId = id;
+            LocalDateTime outTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(outMillis), zoneId);
+            StringBuilder lines = months.computeIfAbsent(MONTH.format(outTime), month -> new StringBuilder());
+            lines.append(id).append(',').append(parkingNumber).append(',').append(vehicleRegNumber).append(',')
+                    .append(price).append(',')
+                    .append(LocalDateTime.ofInstant(Instant.ofEpochMilli(inMillis), zoneId)).append(',')
+                    .append(outTime).append('\n');
+        }
+
+        /**
+         * @return the current size of each file the batch appends to, 0 for those not created yet
+         */
+        private Map<String, Long> getFileSizes() throws IOException {
+            Map<String, Long> fileSizes = new TreeMap<>();
+            for (String month : months.keySet()) {
+                Path file = archiveDirectory.resolve(fileName(month));
+                fileSizes.put(file.getFileName().toString(), Files.exists(file) ? Files.size(file) : 0L);
+            }
+            return fileSizes;
+        }
+
+        /**
+         * Appends one gzip member per month file and syncs it. Concatenated members read back as a single stream.
+         * @return the number of files created
+         */
+        private int write() throws IOException {
+            int created = 0;
+            for (Map.Entry<String, StringBuilder> month : months.entrySet()) {
+                Path file = archiveDirectory.resolve(fileName(month.getKey()));
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND)) {
+                    boolean newFile = channel.size() == 0;
+                    try (GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(channel))) {
+                        if (newFile) {
+                            out.write(HEADER.getBytes(StandardCharsets.UTF_8));
+                            created++;
+                        }
+                        out.write(month.getValue().toString().getBytes(StandardCharsets.UTF_8));
+                        out.finish();
+                        channel.force(true);
+                    }
+                }
+            }
+            months.clear();
+            return created;
+        }
+    }
+
+    /**
+     * Outcome of an archival run.
+     */
+    public static class Report {
+        private final long startNanos = System.nanoTime();
+        private long archived;
+        private long deleted;
+        private int batches;
+        private int files;
+        private int lastId;
+        private long elapsedNanos;
+
+        private Report() {
+        }
+
+        public long getArchived() {
+            return archived;
+        }
+
+        /**
+         * @return the number of rows deleted from the ticket table
+         */
+        public long getDeleted() {
+            return deleted;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return the number of archive files created by this run
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        public int getLastId() {
+            return lastId;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            return archived + " tickets archived in " + batches + " batch(es) and " + getElapsedMillis() + "ms, "
+                    + deleted + " deleted, " + files + " new file(s), last ticket " + lastId;
+        }
+    }
+}
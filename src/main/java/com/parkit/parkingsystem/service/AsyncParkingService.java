@@ -0,0 +1,106 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking facade over {@link ParkingService} for gate terminals.
+ * Requests run on a bounded executor; when every worker is busy and the queue is full,
+ * the returned future fails right away with a {@link RejectedExecutionException}
+ * so that the gate can retry instead of piling up work.
+ */
+public class AsyncParkingService implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("AsyncParkingService");
+
+    private final ParkingService parkingService;
+    private final ThreadPoolExecutor executor;
+
+    public AsyncParkingService(ParkingService parkingService) {
+        this(parkingService,
+                Integer.getInteger("parkit.async.threads", 8),
+                Integer.getInteger("parkit.async.queueCapacity", 256));
+    }
+
+    public AsyncParkingService(ParkingService parkingService, int nbThreads, int queueCapacity) {
+        this.parkingService = parkingService;
+        this.executor = new ThreadPoolExecutor(nbThreads, nbThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @see ParkingService#enterVehicle(ParkingType, String)
+     */
+    public CompletableFuture<ParkingResult> enterVehicle(ParkingType parkingType, String vehicleRegNumber) {
+        return submit(() -> parkingService.enterVehicle(parkingType, vehicleRegNumber));
+    }
+
+    /**
+     * @see ParkingService#exitVehicle(String)
+     */
+    public CompletableFuture<ParkingResult> exitVehicle(String vehicleRegNumber) {
+        return submit(() -> parkingService.exitVehicle(vehicleRegNumber));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Parking requests still running after 30s, interrupting them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(work.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Parking service saturated, rejecting request");
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "parking-service-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
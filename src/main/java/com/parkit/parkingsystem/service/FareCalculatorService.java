@@ -1,44 +1,55 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
 import com.parkit.parkingsystem.model.Ticket;
 
 public class FareCalculatorService {
+
+    private static final LatencyHistogram FARE_TIMER = Metrics.timer("fare.calculate");
+
+    private final TariffEngine tariffEngine;
+    private final String lot;
+
+    public FareCalculatorService() {
+        this(TariffEngine.getShared(), System.getProperty("parkit.tariff.lot", TariffEngine.DEFAULT_LOT));
+    }
+
+    /**
+     * @param lot the parking lot whose tariffs apply
+     */
+    public FareCalculatorService(TariffEngine tariffEngine, String lot) {
+        this.tariffEngine = tariffEngine;
+        this.lot = lot;
+    }
+
+    public TariffEngine getTariffEngine() {
+        return tariffEngine;
+    }
 	
     public void calculateFare(Ticket ticket) {
         calculateFare(ticket, false);
     }
     
     public void calculateFare(Ticket ticket, boolean discount){ 
-        if( (ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime())) ){
-            throw new IllegalArgumentException("Out time provided is incorrect:"+ticket.getOutTime().toString());
+        if (ticket.getOutTime() == null) {
+            throw new IllegalArgumentException("Out time provided is incorrect:null");
         }
+        long start = System.nanoTime();
+        ticket.setPrice(calculateFare(ticket.getInTime().getTime(), ticket.getOutTime().getTime(),
+                ticket.getParkingSpot().getParkingType(), discount));
+        FARE_TIMER.recordSince(start);
+    }
 
-        long inMillis = ticket.getInTime().getTime();
-        long outMillis = ticket.getOutTime().getTime();
-
-        long durationMillis = outMillis - inMillis;
-        
-        double durationHours = durationMillis / (1000.0 * 60 * 60);
-        
-		if (durationHours < 0.5) {   
-			durationHours = 0;
-		}
-        
-        switch (ticket.getParkingSpot().getParkingType()){
-            case CAR: {
-                ticket.setPrice(durationHours * Fare.CAR_RATE_PER_HOUR);
-                break;
-            }
-            case BIKE: {
-                ticket.setPrice(durationHours * Fare.BIKE_RATE_PER_HOUR);
-                break;
-            }
-            default: throw new IllegalArgumentException("Unkown Parking Type");
-        }
-        
-		if (discount) {
-			ticket.setPrice(ticket.getPrice() * 0.95);
-		}
+    /**
+     * Prices a stay from primitive inputs, without allocating, for bulk settlements. Not timed, so that
+     * repricing millions of tickets does not flood the fare latencies of the gates.
+     * @param inMillis entry time in epoch milliseconds
+     * @param outMillis exit time in epoch milliseconds
+     * @return the fare given by the tariff of the lot for this vehicle type
+     */
+    public double calculateFare(long inMillis, long outMillis, ParkingType parkingType, boolean discount) {
+        return tariffEngine.price(lot, parkingType, inMillis, outMillis, discount);
     }
-}
\ No newline at end of file
+}
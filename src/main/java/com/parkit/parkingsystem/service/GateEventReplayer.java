@@ -0,0 +1,350 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.GateEvent;
+import com.parkit.parkingsystem.model.ParkingResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams gate events from a CSV or NDJSON file through the headless {@link ParkingService}.
+ * <p>
+ * CSV lines are {@code timestamp,ENTRY|EXIT,plate[,CAR|BIKE]}; NDJSON lines are flat objects with the
+ * {@code timestamp}, {@code event}, {@code plate} and {@code type} fields. Timestamps are epoch millis or
+ * ISO-8601, local to the system zone when they carry no offset.
+ * <p>
+ * Events are replayed one after the other in file order, so spot allocations, rejections and the final
+ * occupancy are those the gates would have seen. They are committed in batches of up to
+ * {@code batchSize} events sharing one transaction; a batch ends early when a plate comes back, so that the
+ * entry and the exit of a vehicle never share a transaction, and when an entry finds no spot after an exit
+ * of the batch freed one, since freed spots are only handed out again once committed. A batch that fails
+ * is rolled back and its events replayed one transaction each. Only one batch is held in memory,
+ * whatever the size of the file.
+ */
+public class GateEventReplayer {
+
+    private static final Logger logger = LogManager.getLogger("GateEventReplayer");
+
+    private static final Pattern JSON_FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|(-?\\d+))");
+
+    private final ParkingService parkingService;
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final int batchSize;
+
+    public GateEventReplayer(ParkingService parkingService, ParkingSpotDAO parkingSpotDAO) {
+        this(parkingService, parkingSpotDAO, Integer.getInteger("parkit.replay.batchSize", 500));
+    }
+
+    public GateEventReplayer(ParkingService parkingService, ParkingSpotDAO parkingSpotDAO, int batchSize) {
+        this.parkingService = parkingService;
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.batchSize = batchSize;
+    }
+
+    public Report replay(Path file) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return replay(reader);
+        }
+    }
+
+    public Report replay(Reader input) throws IOException, InterruptedException {
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        Report report = new Report();
+        long start = System.nanoTime();
+
+        List<GateEvent> batch = new ArrayList<>(batchSize);
+        Set<String> plates = new HashSet<>();
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (isSkipped(line, lineNumber)) {
+                continue;
+            }
+            GateEvent event;
+            try {
+                event = parse(line);
+            } catch (IllegalArgumentException e) {
+                report.malformed.increment();
+                logger.warn("Skipping malformed gate event on line " + lineNumber + ": " + e.getMessage());
+                continue;
+            }
+            report.read.increment();
+            if (batch.size() >= batchSize || !plates.add(event.getVehicleRegNumber())) {
+                replayBatch(batch, report);
+                batch.clear();
+                plates.clear();
+                plates.add(event.getVehicleRegNumber());
+            }
+            batch.add(event);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Replay interrupted on line " + lineNumber);
+            }
+        }
+        replayBatch(batch, report);
+        report.elapsedNanos = System.nanoTime() - start;
+        report.occupancy = countOccupancy();
+        logger.info("Replayed " + report.getRead() + " gate events in " + report.getElapsedMillis() + "ms");
+        return report;
+    }
+
+    /**
+     * Parses one CSV or NDJSON gate event.
+     * @throws IllegalArgumentException when the line is not a valid event
+     */
+    public static GateEvent parse(String line) {
+        String trimmed = line.trim();
+        String timestamp;
+        String direction;
+        String plate;
+        String type;
+        if (trimmed.startsWith("{")) {
+            Map<String, String> fields = new HashMap<>();
+            Matcher matcher = JSON_FIELD.matcher(trimmed);
+            while (matcher.find()) {
+                fields.put(matcher.group(1), matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+            }
+            timestamp = fields.get("timestamp");
+            direction = fields.get("event");
+            plate = fields.get("plate");
+            type = fields.get("type");
+        } else {
+            String[] fields = trimmed.split(",", -1);
+            if (fields.length < 3) {
+                throw new IllegalArgumentException("expected timestamp,event,plate[,type] but got: " + line);
+            }
+            timestamp = fields[0].trim();
+            direction = fields[1].trim();
+            plate = fields[2].trim();
+            type = fields.length > 3 ? fields[3].trim() : null;
+        }
+        if (timestamp == null || direction == null || plate == null || plate.isEmpty()) {
+            throw new IllegalArgumentException("missing timestamp, event or plate: " + line);
+        }
+        if (plate.length() > DBConstants.MAX_VEHICLE_REG_NUMBER_LENGTH) {
+            throw new IllegalArgumentException("plate longer than " + DBConstants.MAX_VEHICLE_REG_NUMBER_LENGTH + " characters: " + line);
+        }
+        GateEvent.Direction eventDirection = GateEvent.Direction.valueOf(direction.toUpperCase(Locale.ROOT));
+        ParkingType parkingType = type == null || type.isEmpty() ? null : ParkingType.valueOf(type.toUpperCase(Locale.ROOT));
+        if (eventDirection == GateEvent.Direction.ENTRY && parkingType == null) {
+            throw new IllegalArgumentException("entry without a vehicle type: " + line);
+        }
+        return new GateEvent(parseTimestamp(timestamp), eventDirection, plate, parkingType);
+    }
+
+    private static Date parseTimestamp(String timestamp) {
+        if (!timestamp.isEmpty() && timestamp.chars().allMatch(Character::isDigit)) {
+            return new Date(Long.parseLong(timestamp));
+        }
+        try {
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(timestamp, ZonedDateTime::from, LocalDateTime::from);
+            Instant instant = parsed instanceof ZonedDateTime
+                    ? ((ZonedDateTime) parsed).toInstant()
+                    : ((LocalDateTime) parsed).atZone(ZoneId.systemDefault()).toInstant();
+            return Date.from(instant);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid timestamp " + timestamp, e);
+        }
+    }
+
+    private static boolean isSkipped(String line, long lineNumber) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#")
+                || (lineNumber == 1 && trimmed.toLowerCase(Locale.ROOT).startsWith("timestamp"));
+    }
+
+    private Map<ParkingType, int[]> countOccupancy() {
+        Map<ParkingType, int[]> occupancy = new EnumMap<>(ParkingType.class);
+        List<ParkingSpot> parkingSpots = parkingSpotDAO.getAllParkingSpots();
+        if (parkingSpots == null) {
+            return occupancy;
+        }
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            int[] counts = occupancy.computeIfAbsent(parkingSpot.getParkingType(), type -> new int[2]);
+            if (!parkingSpot.isAvailable()) {
+                counts[0]++;
+            }
+            counts[1]++;
+        }
+        return occupancy;
+    }
+
+    private void replayBatch(List<GateEvent> batch, Report report) {
+        List<GateEvent> pending = batch;
+        while (!pending.isEmpty()) {
+            List<ParkingResult> results = new ArrayList<>(pending.size());
+            try (UnitOfWork unitOfWork = parkingService.beginUnitOfWork()) {
+                boolean spotFreed = false;
+                for (GateEvent event : pending) {
+                    ParkingResult result = process(unitOfWork, event);
+                    if (result.getStatus() == ParkingResult.Status.NO_SPOT_AVAILABLE && spotFreed) {
+                        // retried in the next transaction, once the freed spots are committed
+                        break;
+                    }
+                    results.add(result);
+                    spotFreed |= event.getDirection() == GateEvent.Direction.EXIT && result.isSuccess();
+                }
+                unitOfWork.commit();
+            } catch (Exception e) {
+                logger.debug("Batch of {} gate events rolled back, replaying them one by one", Unbox.box(pending.size()), e);
+                replayOneByOne(pending, report);
+                return;
+            }
+            for (int i = 0; i < results.size(); i++) {
+                report.count(pending.get(i).getDirection(), results.get(i).getStatus());
+            }
+            pending = pending.subList(results.size(), pending.size());
+        }
+    }
+
+    private ParkingResult process(UnitOfWork unitOfWork, GateEvent event) throws Exception {
+        return event.getDirection() == GateEvent.Direction.ENTRY
+                ? parkingService.enterVehicle(unitOfWork, event.getParkingType(), event.getVehicleRegNumber(), event.getTime())
+                : parkingService.exitVehicle(unitOfWork, event.getVehicleRegNumber(), event.getTime());
+    }
+
+    private void replayOneByOne(List<GateEvent> events, Report report) {
+        for (GateEvent event : events) {
+            try {
+                ParkingResult result = event.getDirection() == GateEvent.Direction.ENTRY
+                        ? parkingService.enterVehicle(event.getParkingType(), event.getVehicleRegNumber(), event.getTime())
+                        : parkingService.exitVehicle(event.getVehicleRegNumber(), event.getTime());
+                report.count(event.getDirection(), result.getStatus());
+            } catch (Exception e) {
+                report.errors.increment();
+                logger.debug("Unable to replay {} of vehicle {}", event.getDirection(), event.getVehicleRegNumber(), e);
+            }
+        }
+    }
+
+    /**
+     * Counters of a replay run and the occupancy of the parking once it ended.
+     */
+    public static class Report {
+        private final LongAdder read = new LongAdder();
+        private final LongAdder malformed = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder exits = new LongAdder();
+        private final LongAdder noSpotAvailable = new LongAdder();
+        private final LongAdder ticketNotFound = new LongAdder();
+        private final LongAdder updateFailed = new LongAdder();
+        private volatile long elapsedNanos;
+        private volatile Map<ParkingType, int[]> occupancy = new EnumMap<>(ParkingType.class);
+
+        private void count(GateEvent.Direction direction, ParkingResult.Status status) {
+            switch (status) {
+                case OK:
+                    (direction == GateEvent.Direction.ENTRY ? entries : exits).increment();
+                    break;
+                case NO_SPOT_AVAILABLE:
+                    noSpotAvailable.increment();
+                    break;
+                case TICKET_NOT_FOUND:
+                    ticketNotFound.increment();
+                    break;
+                default:
+                    updateFailed.increment();
+            }
+        }
+
+        public long getRead() {
+            return read.sum();
+        }
+
+        public long getMalformed() {
+            return malformed.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getEntries() {
+            return entries.sum();
+        }
+
+        public long getExits() {
+            return exits.sum();
+        }
+
+        public long getNoSpotAvailable() {
+            return noSpotAvailable.sum();
+        }
+
+        public long getTicketNotFound() {
+            return ticketNotFound.sum();
+        }
+
+        public long getUpdateFailed() {
+            return updateFailed.sum();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        public double getEventsPerSecond() {
+            return elapsedNanos == 0 ? 0 : getRead() * 1e9 / elapsedNanos;
+        }
+
+        public int getOccupied(ParkingType parkingType) {
+            int[] counts = occupancy.get(parkingType);
+            return counts == null ? 0 : counts[0];
+        }
+
+        public int getCapacity(ParkingType parkingType) {
+            int[] counts = occupancy.get(parkingType);
+            return counts == null ? 0 : counts[1];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Events replayed: ").append(getRead())
+                    .append(" in ").append(getElapsedMillis()).append("ms")
+                    .append(String.format(Locale.ROOT, " (%.0f events/s)", getEventsPerSecond())).append('\n');
+            sb.append("Entries: ").append(getEntries()).append(", exits: ").append(getExits()).append('\n');
+            sb.append("Rejected: ").append(getNoSpotAvailable()).append(" no spot available, ")
+                    .append(getTicketNotFound()).append(" without open ticket, ")
+                    .append(getUpdateFailed()).append(" failed updates, ")
+                    .append(getErrors()).append(" errors, ")
+                    .append(getMalformed()).append(" malformed lines").append('\n');
+            for (ParkingType parkingType : ParkingType.values()) {
+                sb.append(parkingType).append(" occupancy: ").append(getOccupied(parkingType))
+                        .append('/').append(getCapacity(parkingType)).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+
 public class InteractiveShell {
 
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
 
+    /**
+     * Open tickets are kept in memory when {@code parkit.openTickets.inMemory} is set, and by default with the
+     * embedded database since no other instance can write to it.
+     */
+    public static boolean isOpenTicketStoreEnabled() {
+        return Boolean.parseBoolean(System.getProperty("parkit.openTickets.inMemory",
+                String.valueOf(DataBaseConfig.isEmbeddedBackend())));
+    }
+
     public static void loadInterface(){
         logger.info("App initialized!!!");
         System.out.println("Welcome to Parking System!");
@@ -18,7 +30,28 @@ public class InteractiveShell {
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
         ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
         TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        ParkingService parkingService;
+        if (JournaledParkingService.isEnabled()) {
+            // the parking table lags the journal, the spot index must not be reconciled with it
+            try {
+                parkingService = JournaledParkingService.start(inputReaderUtil, parkingSpotDAO, ticketDAO);
+            } catch (Exception e) {
+                logger.error("Unable to start the ticket journal", e);
+                return;
+            }
+        } else {
+            if (parkingSpotDAO.loadSpotIndex()) {
+                parkingSpotDAO.startSpotIndexReconciliation(Long.getLong("parkit.spotIndex.reconcileMillis", 60 * 1000L));
+            }
+            if (isOpenTicketStoreEnabled()) {
+                ticketDAO.loadOpenTickets();
+            }
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        }
+        long archivePeriodMillis = Long.getLong("parkit.archive.periodMillis", 0L);
+        if (archivePeriodMillis > 0) {
+            ArchiveJob.fromSystemProperties(ticketDAO).startArchiving(archivePeriodMillis);
+        }
 
         while(continueApp){
             loadMenu();
@@ -35,6 +68,13 @@ public class InteractiveShell {
                 case 3: {
                     System.out.println("Exiting from the system!");
                     continueApp = false;
+                    if (parkingService instanceof JournaledParkingService) {
+                        try {
+                            ((JournaledParkingService) parkingService).close();
+                        } catch (IOException e) {
+                            logger.error("Unable to close the ticket journal", e);
+                        }
+                    }
                     break;
                 }
                 default: System.out.println("Unsupported option. Please enter a number corresponding to the provided menu");
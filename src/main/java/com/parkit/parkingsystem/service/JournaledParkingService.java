@@ -0,0 +1,328 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.LotSnapshot;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.ParkingResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Parking service acknowledging the gates as soon as the entry or exit is durable in the {@link TicketJournal}.
+ * Spots and open tickets are served from memory, and the journal is written to the database in batches by a
+ * background thread. Tickets entered through the journal have no ID until they are written.
+ * <p>
+ * Enabled with {@code parkit.journal.file}. The spot index and the open tickets are loaded after the journal
+ * is recovered, so they are never behind the gates.
+ * <p>
+ * With {@code parkit.snapshot.file} the spot index and the open tickets are also saved periodically in a
+ * {@link LotSnapshot}. At startup they are then read from the snapshot and brought up to date with the journal
+ * records after it, instead of being loaded from the tables; the journal is written to the database in the
+ * background as usual.
+ */
+public class JournaledParkingService extends ParkingService implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("JournaledParkingService");
+
+    private final TicketJournal journal;
+    private final String journalName;
+    // gates share it; a snapshot takes it alone so that the state it copies matches the last journaled record
+    private final ReadWriteLock gateLock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService snapshots;
+    private Path snapshotFile;
+
+    public JournaledParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO,
+                                   TicketJournal journal, String journalName) {
+        super(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        this.journal = journal;
+        this.journalName = journalName;
+    }
+
+    /**
+     * Headless service, only {@link #enterVehicle} and {@link #exitVehicle} can be used.
+     */
+    public JournaledParkingService(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO, TicketJournal journal, String journalName) {
+        this(null, parkingSpotDAO, ticketDAO, journal, journalName);
+    }
+
+    public static boolean isEnabled() {
+        return System.getProperty("parkit.journal.file") != null;
+    }
+
+    /**
+     * Opens the journal named by the {@code parkit.journal.*} properties and restores the spot index and the
+     * open tickets, from the snapshot named by {@code parkit.snapshot.file} when it is usable. Otherwise the
+     * records left by the previous run are written to the database and the tables are loaded. Then starts
+     * flushing, and snapshotting when enabled.
+     */
+    public static JournaledParkingService start(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO,
+                                                TicketDAO ticketDAO) throws Exception {
+        String journalName = System.getProperty("parkit.journal.name", "default");
+        long appliedSeq = ticketDAO.getJournalCheckpoint(journalName);
+        if (appliedSeq < 0) {
+            throw new IOException("Unable to read the checkpoint of journal " + journalName);
+        }
+        String snapshotProperty = System.getProperty("parkit.snapshot.file");
+        Path snapshotFile = (snapshotProperty == null) ? null : Paths.get(snapshotProperty);
+        LotSnapshot snapshot = null;
+        if (snapshotFile != null) {
+            try {
+                snapshot = LotSnapshot.read(snapshotFile);
+            } catch (IOException e) {
+                logger.warn("Ignoring the lot snapshot, the tables will be loaded", e);
+            }
+        }
+        TicketJournal journal = TicketJournal.open(Paths.get(System.getProperty("parkit.journal.file")), appliedSeq,
+                Long.getLong("parkit.journal.maxBytes", 64L * 1024 * 1024), (snapshot == null) ? -1 : snapshot.getSeq());
+        try {
+            JournaledParkingService service = new JournaledParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, journal, journalName);
+            int batchSize = Integer.getInteger("parkit.journal.batchSize", 500);
+            if (!service.restore(snapshot)) {
+                journal.recover(service::flush, batchSize);
+                if (!parkingSpotDAO.loadSpotIndex()) {
+                    throw new IOException("Unable to load the parking spots");
+                }
+                ticketDAO.loadOpenTickets();
+            }
+            journal.startFlushing(service::flush, Long.getLong("parkit.journal.flushMillis", 200L), batchSize);
+            if (snapshotFile != null) {
+                service.startSnapshots(snapshotFile, Long.getLong("parkit.snapshot.periodMillis", 60 * 1000L));
+            }
+            return service;
+        } catch (Exception e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the lowest free spot from memory and journals the entry.
+     * @return OK with the ticket, whose ID is 0 until the journal is flushed, or NO_SPOT_AVAILABLE
+     * @throws IllegalArgumentException when the plate does not fit the ticket table; nothing is journaled
+     */
+    @Override
+    public ParkingResult enterVehicle(ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        long start = System.nanoTime();
+        int nbPreviousTickets = ticketDAO.getNbTicket(vehicleRegNumber);
+        gateLock.readLock().lock();
+        try {
+            int parkingNumber = parkingSpotDAO.reserveNextAvailableSlot(parkingType);
+            if (parkingNumber <= 0) {
+                NO_SPOT_AVAILABLE.increment();
+                return ParkingResult.noSpotAvailable();
+            }
+            try {
+                journal.appendEntry(vehicleRegNumber, parkingType, parkingNumber, inTime.getTime());
+            } catch (IOException | IllegalArgumentException e) {
+                parkingSpotDAO.releaseSlot(parkingNumber);
+                throw e;
+            }
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(inTime);
+            ticket.setOutTime(null);
+            ticket.setNbPreviousTickets(nbPreviousTickets);
+            ticketDAO.addOpenTicket(ticket);
+            return ParkingResult.ok(ticket);
+        } finally {
+            gateLock.readLock().unlock();
+            ENTRY_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Prices the oldest open ticket of the vehicle, journals the exit and frees the spot in memory.
+     * @return OK with the closed ticket, or TICKET_NOT_FOUND when the vehicle has no open ticket
+     */
+    @Override
+    public ParkingResult exitVehicle(String vehicleRegNumber, Date outTime) throws Exception {
+        long start = System.nanoTime();
+        gateLock.readLock().lock();
+        try {
+            Ticket ticket = ticketDAO.pollOpenTicket(vehicleRegNumber);
+            if (ticket == null) {
+                return ParkingResult.ticketNotFound();
+            }
+            ticket.setOutTime(outTime);
+            fareCalculatorService.calculateFare(ticket, ticket.getNbPreviousTickets() > 0);
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            try {
+                journal.appendExit(vehicleRegNumber, parkingSpot.getParkingType(), parkingSpot.getId(),
+                        ticket.getInTime().getTime(), outTime.getTime(), ticket.getPrice());
+            } catch (IOException e) {
+                ticket.setOutTime(null);
+                ticket.setPrice(0);
+                ticketDAO.addOpenTicket(ticket);
+                throw e;
+            }
+            parkingSpot.setAvailable(true);
+            parkingSpotDAO.releaseSlot(parkingSpot.getId());
+            return ParkingResult.ok(ticket);
+        } finally {
+            gateLock.readLock().unlock();
+            EXIT_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Journals the entry on its own: the journal acknowledges each record once durable, the unit of work is not used.
+     */
+    @Override
+    public ParkingResult enterVehicle(UnitOfWork unitOfWork, ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        return enterVehicle(parkingType, vehicleRegNumber, inTime);
+    }
+
+    /**
+     * Journals the exit on its own, see {@link #enterVehicle(UnitOfWork, ParkingType, String, Date)}.
+     */
+    @Override
+    public ParkingResult exitVehicle(UnitOfWork unitOfWork, String vehicleRegNumber, Date outTime) throws Exception {
+        return exitVehicle(vehicleRegNumber, outTime);
+    }
+
+    public TicketJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Loads the spot index and the open tickets from the snapshot and replays the journal records after it.
+     * @return false if there is no snapshot or the journal no longer holds every record after it
+     */
+    boolean restore(LotSnapshot snapshot) {
+        List<TicketJournal.Record> records = journal.takeRecordsAfterSnapshot();
+        if (snapshot == null) {
+            return false;
+        }
+        if (records == null) {
+            logger.warn("Lot snapshot at record " + snapshot.getSeq() + " does not match the journal, the tables will be loaded");
+            return false;
+        }
+        parkingSpotDAO.loadSpotIndex(snapshot.getParkingSpots());
+        ticketDAO.loadOpenTickets(snapshot.getOpenTickets());
+        for (TicketJournal.Record record : records) {
+            if (record.isEntry()) {
+                parkingSpotDAO.reserveSlot(record.getParkingNumber());
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(new ParkingSpot(record.getParkingNumber(), record.getParkingType(), false));
+                ticket.setVehicleRegNumber(record.getVehicleRegNumber());
+                ticket.setInTime(new Date(record.getInMillis()));
+                ticketDAO.addOpenTicket(ticket);
+            } else {
+                ticketDAO.removeOpenTicket(record.getVehicleRegNumber());
+                parkingSpotDAO.releaseSlot(record.getParkingNumber());
+            }
+        }
+        logger.info("Restored " + snapshot.getParkingSpots().size() + " parking spots and " + snapshot.getOpenTickets().size()
+                + " open tickets from the lot snapshot, then " + records.size() + " journaled gate events");
+        return true;
+    }
+
+    /**
+     * Saves the spot index and the open tickets. Gates wait while they are copied, not while they are written.
+     * @return the size of the snapshot in bytes
+     */
+    public long writeSnapshot(Path file) throws IOException {
+        long seq;
+        List<ParkingSpot> parkingSpots;
+        List<Ticket> openTickets;
+        gateLock.writeLock().lock();
+        try {
+            seq = journal.getLastSeq();
+            parkingSpots = parkingSpotDAO.getIndexedParkingSpots();
+            openTickets = ticketDAO.getOpenTicketsInMemory();
+        } finally {
+            gateLock.writeLock().unlock();
+        }
+        if (parkingSpots == null || openTickets == null) {
+            throw new IOException("The lot is not loaded in memory");
+        }
+        return LotSnapshot.write(file, seq, parkingSpots, openTickets);
+    }
+
+    /**
+     * Writes a snapshot periodically on a daemon thread, and a last one on {@link #close}. Failures are
+     * logged; the previous snapshot stays in place.
+     */
+    public ScheduledExecutorService startSnapshots(final Path file, long periodMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lot-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                writeSnapshot(file);
+            } catch (Exception e) {
+                logger.error("Unable to write the lot snapshot " + file, e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        snapshots = scheduler;
+        snapshotFile = file;
+        return scheduler;
+    }
+
+    /**
+     * Writes journaled records to the database in one transaction, with the checkpoint, so each record is
+     * written exactly once even if the process dies between the commit and the removal from the journal.
+     */
+    void flush(List<TicketJournal.Record> records) throws Exception {
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            for (TicketJournal.Record record : records) {
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(new ParkingSpot(record.getParkingNumber(), record.getParkingType(), !record.isEntry()));
+                ticket.setVehicleRegNumber(record.getVehicleRegNumber());
+                ticket.setInTime(new Date(record.getInMillis()));
+                ticket.setPrice(record.getPrice());
+                if (record.isEntry()) {
+                    ticketDAO.insertJournaledTicket(unitOfWork, ticket);
+                } else {
+                    ticket.setOutTime(new Date(record.getOutMillis()));
+                    if (!ticketDAO.closeJournaledTicket(unitOfWork, ticket)) {
+                        logger.warn("No open ticket to close for journaled exit " + record);
+                    }
+                }
+                parkingSpotDAO.writeAvailability(unitOfWork, record.getParkingNumber(), !record.isEntry());
+            }
+            ticketDAO.saveJournalCheckpoint(unitOfWork, journalName, records.get(records.size() - 1).getSeq());
+            unitOfWork.commit();
+        }
+    }
+
+    /**
+     * Closes the journal. Records not yet in the database are written at the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        if (snapshots != null) {
+            snapshots.shutdown();
+            try {
+                snapshots.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+        if (snapshotFile != null) {
+            writeSnapshot(snapshotFile);
+        }
+    }
+}
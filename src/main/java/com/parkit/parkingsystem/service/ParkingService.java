@@ -3,23 +3,39 @@ package com.parkit.parkingsystem.service;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.ParkingResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.sql.SQLException;
 import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Entry and exit workflows. {@link #enterVehicle} and {@link #exitVehicle} take their input as parameters
+ * and never touch the console, so gate controllers, replays and load tests can drive them directly.
+ * {@link #processIncomingVehicle} and {@link #processExitingVehicle} are the console client used by the
+ * interactive shell.
+ */
 public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
-    private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    protected static final LatencyHistogram ENTRY_TIMER = Metrics.timer("parking.entry");
+    protected static final LatencyHistogram EXIT_TIMER = Metrics.timer("parking.exit");
+    protected static final LongAdder NO_SPOT_AVAILABLE = Metrics.counter("parking.noSpotAvailable");
+
+    protected static final FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
     private InputReaderUtil inputReaderUtil;
-    private ParkingSpotDAO parkingSpotDAO;
-    private  TicketDAO ticketDAO;
+    protected final ParkingSpotDAO parkingSpotDAO;
+    protected final TicketDAO ticketDAO;
 
     public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
         this.inputReaderUtil = inputReaderUtil;
@@ -27,40 +43,89 @@ public class ParkingService {
         this.ticketDAO = ticketDAO;
     }
 
+    /**
+     * Headless service, only {@link #enterVehicle} and {@link #exitVehicle} can be used.
+     */
+    public ParkingService(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        this(null, parkingSpotDAO, ticketDAO);
+    }
+
     public void processIncomingVehicle() {
         try{
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if(parkingSpot !=null && parkingSpot.getId() > 0){
-                String vehicleRegNumber = getVehichleRegNumber();
-                
-                boolean isRecurring = ticketDAO.getNbTicket(vehicleRegNumber) > 0;
-                if (isRecurring) {
-                    System.out.println("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, vous allez obtenir une remise de 5%");
-                } else {
-                    System.out.println("Bienvenue ! Le stationnement est gratuit pour moins de 30 minutes");
-                }
-        
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-                System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:"+parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+inTime);
+            // no free spot lookup first: the claim of enterVehicle tells whether one is left
+            ParkingType parkingType = getVehichleType();
+            String vehicleRegNumber = getVehichleRegNumber();
+            ParkingResult result = enterVehicle(parkingType, vehicleRegNumber);
+            if (!result.isSuccess()) {
+                System.out.println("Unable to allocate a parking spot. Parking slots might be full");
+                return;
             }
+            if (result.isRecurringUser()) {
+                System.out.println("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, vous allez obtenir une remise de 5%");
+            } else {
+                System.out.println("Bienvenue ! Le stationnement est gratuit pour moins de 30 minutes");
+            }
+            System.out.println("Generated Ticket and saved in DB");
+            System.out.println("Please park your vehicle in spot number:"+result.getParkingNumber());
+            System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+result.getInTime());
+        }catch(IllegalArgumentException ie){
+            logger.error("Error parsing user input for type of vehicle", ie);
         }catch(Exception e){
             logger.error("Unable to process incoming vehicle",e);
         }
     }
+
+    /**
+     * Allocates a spot to the vehicle and saves its ticket. The recurring lookup, the spot claim
+     * and the ticket insert commit or roll back together.
+     * @return OK with the saved ticket, or NO_SPOT_AVAILABLE when no spot of this type is left
+     */
+    public ParkingResult enterVehicle(ParkingType parkingType, String vehicleRegNumber) throws Exception {
+        return enterVehicle(parkingType, vehicleRegNumber, new Date());
+    }
+
+    /**
+     * Same as {@link #enterVehicle(ParkingType, String)} with the in-time recorded by the gate.
+     */
+    public ParkingResult enterVehicle(ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        long start = System.nanoTime();
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            ParkingResult result = enterVehicle(unitOfWork, parkingType, vehicleRegNumber, inTime);
+            if (result.isSuccess()) {
+                unitOfWork.commit();
+            }
+            return result;
+        } finally {
+            ENTRY_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Same as {@link #enterVehicle(ParkingType, String, Date)} inside a transaction of the caller,
+     * which commits it.
+     */
+    public ParkingResult enterVehicle(UnitOfWork unitOfWork, ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        int nbPreviousTickets = ticketDAO.getNbTicket(unitOfWork, vehicleRegNumber);
+
+        int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(unitOfWork, parkingType);//allot a parking space and mark it's availability as false
+        if (parkingNumber <= 0) {
+            NO_SPOT_AVAILABLE.increment();
+            return ParkingResult.noSpotAvailable();
+        }
+        ParkingSpot parkingSpot = new ParkingSpot(parkingNumber, parkingType, false);
+
+        Ticket ticket = new Ticket();
+        //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+        //ticket.setId(ticketID);
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(inTime);
+        ticket.setOutTime(null);
+        ticket.setNbPreviousTickets(nbPreviousTickets);
+        ticketDAO.saveTicket(unitOfWork, ticket);
+        return ParkingResult.ok(ticket);
+    }
     
     private String getVehichleRegNumber() throws Exception {
         System.out.println("Please type the vehicle registration number and press enter key");
@@ -105,23 +170,23 @@ public class ParkingService {
         }
     }
 
+    /**
+     * Number of free spots of this type, for display boards. Served from memory once the
+     * spot index is loaded.
+     */
+    public int getNbAvailableSlots(ParkingType parkingType) {
+        return parkingSpotDAO.getNbAvailableSlots(parkingType);
+    }
+
     public void processExitingVehicle() {
         try{
             String vehicleRegNumber = getVehichleRegNumber();
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
-
-            boolean discount = ticketDAO.getNbTicket(vehicleRegNumber) > 0;
-
-            fareCalculatorService.calculateFare(ticket, discount);
-            
-            if(ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
+            ParkingResult result = exitVehicle(vehicleRegNumber);
+            if (result.isSuccess()) {
+                System.out.println("Please pay the parking fare:" + result.getFare());
+                System.out.println("Recorded out-time for vehicle number:" + vehicleRegNumber + " is:" + result.getOutTime());
+            }else if (result.getStatus() == ParkingResult.Status.TICKET_NOT_FOUND) {
+                System.out.println("No open ticket found for vehicle number:" + vehicleRegNumber);
             }else{
                 System.out.println("Unable to update ticket information. Error occurred");
             }
@@ -129,4 +194,61 @@ public class ParkingService {
             logger.error("Unable to process exiting vehicle",e);
         }
     }
+
+    /**
+     * Prices and closes the open ticket of the vehicle and frees its spot. The ticket close and
+     * the spot release commit or roll back together.
+     * @return OK with the closed ticket, TICKET_NOT_FOUND when the vehicle has no open ticket,
+     * or UPDATE_FAILED when the ticket could not be updated
+     */
+    public ParkingResult exitVehicle(String vehicleRegNumber) throws Exception {
+        return exitVehicle(vehicleRegNumber, new Date());
+    }
+
+    /**
+     * Same as {@link #exitVehicle(String)} with the out-time recorded by the gate.
+     */
+    public ParkingResult exitVehicle(String vehicleRegNumber, Date outTime) throws Exception {
+        long start = System.nanoTime();
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            ParkingResult result = exitVehicle(unitOfWork, vehicleRegNumber, outTime);
+            if (result.isSuccess()) {
+                unitOfWork.commit();
+            }
+            return result;
+        } finally {
+            EXIT_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Same as {@link #exitVehicle(String, Date)} inside a transaction of the caller, which commits it.
+     */
+    public ParkingResult exitVehicle(UnitOfWork unitOfWork, String vehicleRegNumber, Date outTime) throws Exception {
+        Ticket ticket = ticketDAO.getTicket(unitOfWork, vehicleRegNumber);
+        if (ticket == null) {
+            return ParkingResult.ticketNotFound();
+        }
+        ticket.setOutTime(outTime);
+
+        boolean discount = ticket.getNbPreviousTickets() > 0;
+
+        fareCalculatorService.calculateFare(ticket, discount);
+
+        if (!ticketDAO.updateTicket(unitOfWork, ticket)) {
+            return ParkingResult.updateFailed(ticket);
+        }
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        parkingSpot.setAvailable(true);
+        parkingSpotDAO.updateParking(unitOfWork, parkingSpot);
+        return ParkingResult.ok(ticket);
+    }
+
+    /**
+     * Starts a transaction that several {@link #enterVehicle(UnitOfWork, ParkingType, String, Date)} and
+     * {@link #exitVehicle(UnitOfWork, String, Date)} calls share.
+     */
+    public UnitOfWork beginUnitOfWork() throws ClassNotFoundException, SQLException {
+        return ticketDAO.beginUnitOfWork();
+    }
 }
@@ -0,0 +1,239 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Occupancy, revenue and turnover over a period, aggregated while the tickets are streamed from the
+ * database. Memory depends on the length of the period and the number of spots, never on the number
+ * of tickets.
+ */
+public class ReportService {
+
+    private static final Logger logger = LogManager.getLogger("ReportService");
+
+    private final TicketDAO ticketDAO;
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final int fetchSize;
+
+    public ReportService(TicketDAO ticketDAO, ParkingSpotDAO parkingSpotDAO) {
+        this(ticketDAO, parkingSpotDAO, Integer.getInteger("parkit.report.fetchSize", 1000));
+    }
+
+    public ReportService(TicketDAO ticketDAO, ParkingSpotDAO parkingSpotDAO, int fetchSize) {
+        this.ticketDAO = ticketDAO;
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Builds the report of [fromMillis, toMillis). Vehicles still parked count as occupying their spot until now.
+     */
+    public Report buildReport(long fromMillis, long toMillis) throws Exception {
+        final Report report = new Report(fromMillis, toMillis, System.currentTimeMillis());
+        List<ParkingSpot> parkingSpots = parkingSpotDAO.getAllParkingSpots();
+        if (parkingSpots == null) {
+            throw new IllegalStateException("Unable to read the parking spots");
+        }
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            report.addSpot(parkingSpot.getId(), parkingSpot.getParkingType());
+        }
+        long start = System.nanoTime();
+        ticketDAO.forEachTicketInPeriod(fromMillis, toMillis, fetchSize, report::addTicket);
+        logger.info("Aggregated " + report.getNbTickets() + " tickets in " + (System.nanoTime() - start) / 1000000 + "ms");
+        return report;
+    }
+
+    /**
+     * Aggregates of one period. Occupancy is kept per hour as a count of whole hours occupied, stored as a
+     * difference array, plus the minutes of partially occupied hours, so each ticket is added in constant time.
+     */
+    public static class Report {
+        private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+        private static final ParkingType[] TYPES = ParkingType.values();
+
+        private final long fromMillis;
+        private final long toMillis;
+        private final long nowMillis;
+        private final int nbHours;
+        private final long[][] wholeHoursDelta;
+        private final long[][] partialHourMillis;
+        private final int[] capacity = new int[TYPES.length];
+        private final double[] revenue = new double[TYPES.length];
+        private final long[] nbPaidTickets = new long[TYPES.length];
+        private ParkingType[] spotTypes = new ParkingType[0];
+        private long[] spotVehicles = new long[0];
+        private long[] spotOccupiedMillis = new long[0];
+        private long nbTickets;
+
+        Report(long fromMillis, long toMillis, long nowMillis) {
+            if (toMillis <= fromMillis) {
+                throw new IllegalArgumentException("Empty report period");
+            }
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.nowMillis = nowMillis;
+            this.nbHours = (int) ((toMillis - fromMillis + MILLIS_PER_HOUR - 1) / MILLIS_PER_HOUR);
+            this.wholeHoursDelta = new long[TYPES.length][nbHours + 1];
+            this.partialHourMillis = new long[TYPES.length][nbHours];
+        }
+
+        void addSpot(int parkingNumber, ParkingType parkingType) {
+            ensureSpot(parkingNumber);
+            spotTypes[parkingNumber] = parkingType;
+            capacity[parkingType.ordinal()]++;
+        }
+
+        void addTicket(int parkingNumber, ParkingType parkingType, long inMillis, long outMillis, double price) {
+            nbTickets++;
+            int type = parkingType.ordinal();
+            if (outMillis >= fromMillis && outMillis < toMillis) {
+                revenue[type] += price;
+                nbPaidTickets[type]++;
+            }
+            ensureSpot(parkingNumber);
+            if (inMillis >= fromMillis) {
+                spotVehicles[parkingNumber]++;
+            }
+            long from = Math.max(inMillis, fromMillis);
+            long to = Math.min(outMillis < 0 ? nowMillis : outMillis, toMillis);
+            if (to <= from) {
+                return;
+            }
+            spotOccupiedMillis[parkingNumber] += to - from;
+            int firstHour = (int) ((from - fromMillis) / MILLIS_PER_HOUR);
+            int lastHour = (int) ((to - fromMillis) / MILLIS_PER_HOUR);
+            if (firstHour == lastHour) {
+                partialHourMillis[type][firstHour] += to - from;
+                return;
+            }
+            partialHourMillis[type][firstHour] += hourStart(firstHour + 1) - from;
+            wholeHoursDelta[type][firstHour + 1]++;
+            wholeHoursDelta[type][lastHour]--;
+            if (lastHour < nbHours) {
+                partialHourMillis[type][lastHour] += to - hourStart(lastHour);
+            }
+        }
+
+        public long getNbTickets() {
+            return nbTickets;
+        }
+
+        public int getNbHours() {
+            return nbHours;
+        }
+
+        public int getCapacity(ParkingType parkingType) {
+            return capacity[parkingType.ordinal()];
+        }
+
+        /**
+         * @return the average number of spots of this type occupied during each hour of the period
+         */
+        public double[] getAverageOccupiedSpots(ParkingType parkingType) {
+            int type = parkingType.ordinal();
+            double[] occupied = new double[nbHours];
+            long wholeHours = 0;
+            for (int hour = 0; hour < nbHours; hour++) {
+                wholeHours += wholeHoursDelta[type][hour];
+                occupied[hour] = (wholeHours * MILLIS_PER_HOUR + partialHourMillis[type][hour]) / (double) MILLIS_PER_HOUR;
+            }
+            return occupied;
+        }
+
+        public double getRevenue(ParkingType parkingType) {
+            return revenue[parkingType.ordinal()];
+        }
+
+        public long getNbPaidTickets(ParkingType parkingType) {
+            return nbPaidTickets[parkingType.ordinal()];
+        }
+
+        /**
+         * @return the number of vehicles that entered this spot during the period
+         */
+        public long getVehicles(int parkingNumber) {
+            return parkingNumber < spotVehicles.length ? spotVehicles[parkingNumber] : 0;
+        }
+
+        public double getOccupiedHours(int parkingNumber) {
+            return parkingNumber < spotOccupiedMillis.length ? spotOccupiedMillis[parkingNumber] / (double) MILLIS_PER_HOUR : 0;
+        }
+
+        /**
+         * Writes occupancy.csv, revenue.csv and turnover.csv in the directory.
+         */
+        public void exportCsv(Path directory, ZoneId zoneId) throws IOException {
+            Files.createDirectories(directory);
+            try (Writer writer = Files.newBufferedWriter(directory.resolve("occupancy.csv"), StandardCharsets.UTF_8)) {
+                writeOccupancyCsv(writer, zoneId);
+            }
+            try (Writer writer = Files.newBufferedWriter(directory.resolve("revenue.csv"), StandardCharsets.UTF_8)) {
+                writeRevenueCsv(writer);
+            }
+            try (Writer writer = Files.newBufferedWriter(directory.resolve("turnover.csv"), StandardCharsets.UTF_8)) {
+                writeTurnoverCsv(writer);
+            }
+        }
+
+        public void writeOccupancyCsv(Writer writer, ZoneId zoneId) throws IOException {
+            writer.write("hour,type,average_occupied_spots,capacity,occupancy_rate\n");
+            for (ParkingType parkingType : TYPES) {
+                double[] occupied = getAverageOccupiedSpots(parkingType);
+                int typeCapacity = getCapacity(parkingType);
+                for (int hour = 0; hour < nbHours; hour++) {
+                    writer.write(LocalDateTime.ofInstant(Instant.ofEpochMilli(hourStart(hour)), zoneId) + "," + parkingType + ","
+                            + String.format(Locale.ROOT, "%.3f,%d,%.4f\n", occupied[hour], typeCapacity,
+                            typeCapacity == 0 ? 0 : occupied[hour] / typeCapacity));
+                }
+            }
+        }
+
+        public void writeRevenueCsv(Writer writer) throws IOException {
+            writer.write("type,paid_tickets,revenue\n");
+            for (ParkingType parkingType : TYPES) {
+                writer.write(parkingType + "," + getNbPaidTickets(parkingType) + ","
+                        + String.format(Locale.ROOT, "%.2f\n", getRevenue(parkingType)));
+            }
+        }
+
+        public void writeTurnoverCsv(Writer writer) throws IOException {
+            writer.write("parking_number,type,vehicles,occupied_hours\n");
+            for (int parkingNumber = 0; parkingNumber < spotTypes.length; parkingNumber++) {
+                if (spotTypes[parkingNumber] != null) {
+                    writer.write(parkingNumber + "," + spotTypes[parkingNumber] + "," + spotVehicles[parkingNumber] + ","
+                            + String.format(Locale.ROOT, "%.2f\n", getOccupiedHours(parkingNumber)));
+                }
+            }
+        }
+
+        private long hourStart(int hour) {
+            return fromMillis + hour * MILLIS_PER_HOUR;
+        }
+
+        private void ensureSpot(int parkingNumber) {
+            if (parkingNumber >= spotTypes.length) {
+                int length = Math.max(parkingNumber + 1, spotTypes.length * 2);
+                spotTypes = Arrays.copyOf(spotTypes, length);
+                spotVehicles = Arrays.copyOf(spotVehicles, length);
+                spotOccupiedMillis = Arrays.copyOf(spotOccupiedMillis, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Recomputes the price of closed tickets with the current tariffs, e.g. after a tariff change or for an audit.
+ * <p>
+ * Tickets are streamed in ID order and handled in chunks: each chunk is priced in parallel, the prices that
+ * changed are written back in one JDBC batch, then the range of the run and the last ID of the chunk are saved
+ * to the checkpoint file. A run on the same range that stops half way resumes after the checkpoint; a run that
+ * completes removes it. A checkpoint saved by a run on another range is ignored.
+ */
+public class RepricingJob {
+
+    private static final Logger logger = LogManager.getLogger("RepricingJob");
+
+    private final TicketDAO ticketDAO;
+    private final FareCalculatorService fareCalculatorService;
+    private final Path checkpointFile;
+    private final int chunkSize;
+    private final int fetchSize;
+    private final int parallelism;
+
+    public RepricingJob(TicketDAO ticketDAO, FareCalculatorService fareCalculatorService, Path checkpointFile) {
+        this(ticketDAO, fareCalculatorService, checkpointFile,
+                Integer.getInteger("parkit.reprice.chunkSize", 5000),
+                Integer.getInteger("parkit.reprice.fetchSize", 1000),
+                Integer.getInteger("parkit.reprice.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public RepricingJob(TicketDAO ticketDAO, FareCalculatorService fareCalculatorService, Path checkpointFile,
+                        int chunkSize, int fetchSize, int parallelism) {
+        this.ticketDAO = ticketDAO;
+        this.fareCalculatorService = fareCalculatorService;
+        this.checkpointFile = checkpointFile;
+        this.chunkSize = chunkSize;
+        this.fetchSize = fetchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reprices the closed tickets with an ID in [fromId, toId], starting after the checkpoint if there is one
+     * for this range.
+     */
+    public Report run(int fromId, int toId) throws Exception {
+        int startId = fromId;
+        int[] checkpoint = readCheckpoint();
+        if (checkpoint != null && (checkpoint[0] != fromId || checkpoint[1] != toId)) {
+            logger.warn("Ignoring the checkpoint of the repricing of tickets " + checkpoint[0] + " to " + checkpoint[1]);
+        } else if (checkpoint != null && checkpoint[2] >= fromId) {
+            startId = checkpoint[2] + 1;
+            logger.info("Resuming repricing after ticket " + checkpoint[2]);
+        }
+        final Report report = new Report(ticketDAO.countClosedTickets(startId, toId));
+        final Chunk chunk = new Chunk(chunkSize);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ticketDAO.forEachClosedTicket(startId, toId, fetchSize, (id, inMillis, outMillis, parkingType, recurring, price) -> {
+                chunk.add(id, inMillis, outMillis, parkingType, recurring, price);
+                if (chunk.size == chunkSize) {
+                    flush(chunk, pool, report, fromId, toId);
+                }
+            });
+            flush(chunk, pool, report, fromId, toId);
+        } finally {
+            pool.shutdown();
+        }
+        report.elapsedNanos = System.nanoTime() - report.startNanos;
+        if (checkpointFile != null) {
+            Files.deleteIfExists(checkpointFile);
+        }
+        logger.info("Repricing done: " + report);
+        return report;
+    }
+
+    private void flush(Chunk chunk, ForkJoinPool pool, Report report, int fromId, int toId) throws Exception {
+        if (chunk.size == 0) {
+            return;
+        }
+        final int size = chunk.size;
+        pool.submit(() -> IntStream.range(0, size).parallel().forEach(i -> chunk.newPrices[i] = price(chunk, i))).get();
+
+        int changed = 0;
+        int failed = 0;
+        for (int i = 0; i < size; i++) {
+            double newPrice = chunk.newPrices[i];
+            if (Double.isNaN(newPrice)) {
+                failed++;
+            } else if (newPrice != chunk.oldPrices[i]) {
+                chunk.changedIds[changed] = chunk.ids[i];
+                chunk.changedPrices[changed] = newPrice;
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            ticketDAO.updatePrices(chunk.changedIds, chunk.changedPrices, changed);
+        }
+        int lastId = chunk.ids[size - 1];
+        writeCheckpoint(fromId, toId, lastId);
+
+        report.processed += size;
+        report.changed += changed;
+        report.failed += failed;
+        report.lastId = lastId;
+        report.elapsedNanos = System.nanoTime() - report.startNanos;
+        logger.info("Repriced " + report.processed + "/" + report.total + " tickets, " + report.changed + " changed"
+                + String.format(Locale.ROOT, " (%.0f tickets/s)", report.getTicketsPerSecond()));
+        chunk.size = 0;
+    }
+
+    private double price(Chunk chunk, int i) {
+        try {
+            return fareCalculatorService.calculateFare(chunk.inMillis[i], chunk.outMillis[i], chunk.parkingTypes[i], chunk.recurring[i]);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unable to reprice ticket " + chunk.ids[i] + ": " + e.getMessage());
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return fromId, toId and last repriced ID, or null if there is no checkpoint
+     */
+    private int[] readCheckpoint() throws IOException {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return null;
+        }
+        String[] fields = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim().split(",");
+        return new int[]{Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2])};
+    }
+
+    private void writeCheckpoint(int fromId, int toId, int lastId) throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(tmp, (fromId + "," + toId + "," + lastId).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Tickets of the current chunk, held in parallel arrays.
+     */
+    private static class Chunk {
+        private final int[] ids;
+        private final long[] inMillis;
+        private final long[] outMillis;
+        private final ParkingType[] parkingTypes;
+        private final boolean[] recurring;
+        private final double[] oldPrices;
+        private final double[] newPrices;
+        private final int[] changedIds;
+        private final double[] changedPrices;
+        private int size;
+
+        private Chunk(int capacity) {
+            ids = new int[capacity];
+            inMillis = new long[capacity];
+            outMillis = new long[capacity];
+            parkingTypes = new ParkingType[capacity];
+            recurring = new boolean[capacity];
+            oldPrices = new double[capacity];
+            newPrices = new double[capacity];
+            changedIds = new int[capacity];
+            changedPrices = new double[capacity];
+        }
+
+        private void add(int id, long in, long out, ParkingType parkingType, boolean isRecurring, double price) {
+            ids[size] = id;
+            inMillis[size] = in;
+            outMillis[size] = out;
+            parkingTypes[size] = parkingType;
+            recurring[size] = isRecurring;
+            oldPrices[size] = price;
+            size++;
+        }
+    }
+
+    /**
+     * Progress and outcome of a repricing run.
+     */
+    public static class Report {
+        private final long total;
+        private final long startNanos = System.nanoTime();
+        private long processed;
+        private long changed;
+        private long failed;
+        private int lastId;
+        private long elapsedNanos;
+
+        private Report(long total) {
+            this.total = total;
+        }
+
+        /**
+         * @return the number of closed tickets left to reprice when the run started
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getChanged() {
+            return changed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public int getLastId() {
+            return lastId;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        public double getTicketsPerSecond() {
+            return elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return processed + " tickets repriced in " + getElapsedMillis() + "ms"
+                    + String.format(Locale.ROOT, " (%.0f tickets/s)", getTicketsPerSecond())
+                    + ", " + changed + " changed, " + failed + " failed, last ticket " + lastId;
+        }
+    }
+}
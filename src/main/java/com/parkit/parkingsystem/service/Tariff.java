@@ -0,0 +1,269 @@
+package com.parkit.parkingsystem.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Pricing rules of one vehicle type in one lot, compiled into per-minute-of-week prefix sums
+ * so that a stay of any length is priced in constant time.
+ * <p>
+ * Amounts are kept as integers in units of 1/10000 of the currency (rates per hour, daily cap).
+ * The cost of a stay is summed exactly as rate units x milliseconds and divided once at the end,
+ * so a flat tariff prices exactly like {@code hours * rate}.
+ */
+public class Tariff {
+
+    public static final int UNITS_PER_CURRENCY = 10000;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_WEEK = 7 * MILLIS_PER_DAY;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    /** 1970-01-01 was a Thursday: shifting by three days puts Monday 00:00 at the origin. */
+    private static final long MONDAY_SHIFT_MILLIS = 3 * MILLIS_PER_DAY;
+    private static final double NUMERATOR_PER_CURRENCY = 60 * MILLIS_PER_MINUTE * (double) UNITS_PER_CURRENCY;
+
+    private final long baseRate;
+    private final List<Band> bands;
+    private final long dailyCap;
+    private final int freeMinutes;
+    private final double discountFactor;
+    private final TimeZone timeZone;
+
+    private final boolean flat;
+    private final long freeMillis;
+    private final long dailyCapNumerator;
+    private final int[] minuteRates;
+    private final long[] minuteRatePrefix;
+    private final long weekCost;
+    private final long[] cappedDayPrefix;
+
+    /**
+     * @param baseRate rate per hour outside any band, in units
+     * @param bands time-of-day bands, a later band overriding an earlier one where they overlap
+     * @param dailyCap most charged for one calendar day, in units, 0 for no cap
+     * @param freeMinutes stays shorter than this are free
+     * @param discountFactor applied to the price of recurring users
+     * @param timeZone zone of the bands and calendar days
+     */
+    public Tariff(long baseRate, List<Band> bands, long dailyCap, int freeMinutes, double discountFactor, TimeZone timeZone) {
+        if (baseRate < 0 || baseRate > Integer.MAX_VALUE || dailyCap < 0 || freeMinutes < 0) {
+            throw new IllegalArgumentException("Invalid tariff: rate " + baseRate + ", daily cap " + dailyCap + ", free minutes " + freeMinutes);
+        }
+        this.baseRate = baseRate;
+        this.bands = Collections.unmodifiableList(new ArrayList<>(bands));
+        this.dailyCap = dailyCap;
+        this.freeMinutes = freeMinutes;
+        this.discountFactor = discountFactor;
+        this.timeZone = (TimeZone) timeZone.clone();
+
+        this.flat = bands.isEmpty() && dailyCap == 0;
+        this.freeMillis = freeMinutes * MILLIS_PER_MINUTE;
+        this.dailyCapNumerator = dailyCap * 60 * MILLIS_PER_MINUTE;
+
+        minuteRates = new int[MINUTES_PER_WEEK];
+        Arrays.fill(minuteRates, (int) baseRate);
+        for (Band band : bands) {
+            band.applyTo(minuteRates);
+        }
+        minuteRatePrefix = new long[MINUTES_PER_WEEK + 1];
+        for (int minute = 0; minute < MINUTES_PER_WEEK; minute++) {
+            minuteRatePrefix[minute + 1] = minuteRatePrefix[minute] + minuteRates[minute];
+        }
+        weekCost = minuteRatePrefix[MINUTES_PER_WEEK] * MILLIS_PER_MINUTE;
+        cappedDayPrefix = new long[8];
+        for (int day = 0; day < 7; day++) {
+            long dayCost = (minuteRatePrefix[(day + 1) * MINUTES_PER_DAY] - minuteRatePrefix[day * MINUTES_PER_DAY]) * MILLIS_PER_MINUTE;
+            cappedDayPrefix[day + 1] = cappedDayPrefix[day] + (dailyCap > 0 ? Math.min(dayCost, dailyCapNumerator) : dayCost);
+        }
+    }
+
+    /**
+     * Tariff with a single hourly rate all week long and no daily cap.
+     */
+    public static Tariff flat(long ratePerHour, int freeMinutes, double discountFactor) {
+        return new Tariff(ratePerHour, Collections.<Band>emptyList(), 0, freeMinutes, discountFactor, TimeZone.getDefault());
+    }
+
+    /**
+     * Prices a stay without allocating.
+     * @param inMillis entry time in epoch milliseconds
+     * @param outMillis exit time in epoch milliseconds
+     */
+    public double price(long inMillis, long outMillis, boolean discount) {
+        if (outMillis < inMillis) {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outMillis + " is before in time " + inMillis);
+        }
+        long durationMillis = outMillis - inMillis;
+        if (durationMillis < freeMillis) {
+            return 0;
+        }
+        long numerator;
+        if (flat) {
+            numerator = baseRate * durationMillis;
+        } else {
+            long from = toLocalMillis(inMillis);
+            // a stay inside the hour repeated when clocks go back can end "before" it started in local time
+            long to = Math.max(from, toLocalMillis(outMillis));
+            numerator = dailyCap > 0 ? cappedCost(from, to) : cost(from, to);
+        }
+        double price = numerator / NUMERATOR_PER_CURRENCY;
+        if (discount) {
+            price = price * discountFactor;
+        }
+        return price;
+    }
+
+    public long getBaseRate() {
+        return baseRate;
+    }
+
+    public List<Band> getBands() {
+        return bands;
+    }
+
+    public long getDailyCap() {
+        return dailyCap;
+    }
+
+    public int getFreeMinutes() {
+        return freeMinutes;
+    }
+
+    public double getDiscountFactor() {
+        return discountFactor;
+    }
+
+    /**
+     * Converts an amount such as "1.5" to units of 1/10000 of the currency.
+     */
+    public static long parseAmount(String amount) {
+        return new BigDecimal(amount.trim()).movePointRight(4).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private long toLocalMillis(long epochMillis) {
+        return epochMillis + timeZone.getOffset(epochMillis) + MONDAY_SHIFT_MILLIS;
+    }
+
+    /** Cost of [from, to) in rate units x milliseconds, both in local millis since a Monday 00:00. */
+    private long cost(long from, long to) {
+        return (Math.floorDiv(to, MILLIS_PER_WEEK) - Math.floorDiv(from, MILLIS_PER_WEEK)) * weekCost
+                + costIntoWeek(Math.floorMod(to, MILLIS_PER_WEEK)) - costIntoWeek(Math.floorMod(from, MILLIS_PER_WEEK));
+    }
+
+    private long costIntoWeek(long millisIntoWeek) {
+        int minute = (int) (millisIntoWeek / MILLIS_PER_MINUTE);
+        return minuteRatePrefix[minute] * MILLIS_PER_MINUTE + minuteRates[minute] * (millisIntoWeek % MILLIS_PER_MINUTE);
+    }
+
+    private long cappedCost(long from, long to) {
+        long firstDay = Math.floorDiv(from, MILLIS_PER_DAY);
+        long lastDay = Math.floorDiv(to, MILLIS_PER_DAY);
+        if (firstDay == lastDay) {
+            return Math.min(cost(from, to), dailyCapNumerator);
+        }
+        return Math.min(cost(from, (firstDay + 1) * MILLIS_PER_DAY), dailyCapNumerator)
+                + cappedFullDays(firstDay + 1, lastDay)
+                + Math.min(cost(lastDay * MILLIS_PER_DAY, to), dailyCapNumerator);
+    }
+
+    /** Capped cost of the whole days in [fromDay, toDay), days counted from a Monday. */
+    private long cappedFullDays(long fromDay, long toDay) {
+        return cappedDaysSinceOrigin(toDay) - cappedDaysSinceOrigin(fromDay);
+    }
+
+    private long cappedDaysSinceOrigin(long day) {
+        return Math.floorDiv(day, 7) * cappedDayPrefix[7] + cappedDayPrefix[(int) Math.floorMod(day, 7)];
+    }
+
+    /**
+     * A rate applying between two times of day on some days of the week.
+     * Written {@code [DAY[-DAY] ]HH:mm-HH:mm@rate}, e.g. {@code MON-FRI 08:00-19:00@2.5}.
+     * A band ending before it starts runs past midnight into the next day.
+     */
+    public static class Band {
+        private static final String[] DAYS = {"MON", "TUE", "WED", "THU", "FRI", "SAT", "SUN"};
+
+        private final int firstDay;
+        private final int lastDay;
+        private final int fromMinute;
+        private final int toMinute;
+        private final long rate;
+
+        /**
+         * @param firstDay first day of the week the band starts on, 0 for Monday
+         * @param lastDay last day of the week the band starts on, 6 for Sunday
+         */
+        public Band(int firstDay, int lastDay, int fromMinute, int toMinute, long rate) {
+            if (firstDay < 0 || firstDay > 6 || lastDay < 0 || lastDay > 6
+                    || fromMinute < 0 || fromMinute >= MINUTES_PER_DAY || toMinute < 0 || toMinute > MINUTES_PER_DAY
+                    || rate < 0 || rate > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid tariff band");
+            }
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.fromMinute = fromMinute;
+            this.toMinute = toMinute;
+            this.rate = rate;
+        }
+
+        public static Band parse(String band) {
+            String text = band.trim().toUpperCase(Locale.ROOT);
+            try {
+                int firstDay = 0;
+                int lastDay = 6;
+                int space = text.indexOf(' ');
+                if (space > 0) {
+                    String[] days = text.substring(0, space).split("-");
+                    firstDay = dayOf(days[0]);
+                    lastDay = days.length > 1 ? dayOf(days[1]) : firstDay;
+                    text = text.substring(space + 1).trim();
+                }
+                int at = text.indexOf('@');
+                String[] times = text.substring(0, at).split("-");
+                return new Band(firstDay, lastDay, minuteOf(times[0]), minuteOf(times[1]), parseAmount(text.substring(at + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid tariff band '" + band + "', expected [DAY[-DAY] ]HH:mm-HH:mm@rate", e);
+            }
+        }
+
+        private void applyTo(int[] minuteRates) {
+            int length = toMinute > fromMinute ? toMinute - fromMinute : MINUTES_PER_DAY - fromMinute + toMinute;
+            for (int day = firstDay; ; day = (day + 1) % 7) {
+                int start = day * MINUTES_PER_DAY + fromMinute;
+                for (int minute = 0; minute < length; minute++) {
+                    minuteRates[(start + minute) % MINUTES_PER_WEEK] = (int) rate;
+                }
+                if (day == lastDay) {
+                    break;
+                }
+            }
+        }
+
+        private static int dayOf(String day) {
+            for (int i = 0; i < DAYS.length; i++) {
+                if (DAYS[i].equals(day.trim())) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Unknown day " + day);
+        }
+
+        private static int minuteOf(String time) {
+            String[] parts = time.trim().split(":");
+            int hours = Integer.parseInt(parts[0]);
+            int minutes = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            if (hours < 0 || hours > 24 || minutes < 0 || minutes > 59 || (hours == 24 && minutes != 0)) {
+                throw new IllegalArgumentException("Invalid time " + time);
+            }
+            return hours * 60 + minutes;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the compiled tariffs of every lot and vehicle type, and swaps them atomically on reload
+ * so that prices change without a restart and without blocking callers.
+ * <p>
+ * Tariffs are read from properties keyed {@code <lot>.<TYPE>.<rule>}, e.g.
+ * <pre>
+ * timeZone=Europe/Paris
+ * default.CAR.rate=1.5
+ * default.CAR.bands=MON-FRI 08:00-19:00@2.5; MON-FRI 19:00-08:00@0.5
+ * default.CAR.dailyCap=20
+ * default.CAR.freeMinutes=30
+ * default.CAR.discount=0.95
+ * airport.CAR.rate=4
+ * </pre>
+ * Rules left out take the built-in values, and a lot without a tariff for a vehicle type
+ * uses the one of the {@value #DEFAULT_LOT} lot.
+ */
+public class TariffEngine {
+
+    private static final Logger logger = LogManager.getLogger("TariffEngine");
+
+    public static final String DEFAULT_LOT = "default";
+
+    private static final int DEFAULT_FREE_MINUTES = 30;
+    private static final double DEFAULT_DISCOUNT = 0.95;
+
+    private volatile Map<String, Map<ParkingType, Tariff>> tariffs;
+
+    /**
+     * Engine with the built-in tariffs: {@link Fare} hourly rates, 30 free minutes and 5% off for recurring users.
+     */
+    public TariffEngine() {
+        load(new Properties());
+    }
+
+    public TariffEngine(Properties properties) {
+        load(properties);
+    }
+
+    /**
+     * Engine configured by the {@code parkit.tariff.file} system property, reloaded every
+     * {@code parkit.tariff.reloadMillis} when the file changes. Built-in tariffs when no file is set.
+     */
+    public static TariffEngine fromSystemProperties() {
+        TariffEngine tariffEngine = new TariffEngine();
+        String file = System.getProperty("parkit.tariff.file");
+        if (file != null) {
+            Path path = Paths.get(file);
+            tariffEngine.reload(path);
+            long reloadMillis = Long.getLong("parkit.tariff.reloadMillis", 0L);
+            if (reloadMillis > 0) {
+                tariffEngine.startAutoReload(path, reloadMillis);
+            }
+        }
+        return tariffEngine;
+    }
+
+    /**
+     * @return the engine of the process, built by {@link #fromSystemProperties()} on first use, so that every
+     * fare calculator prices with the same tariffs and a reload swaps them for all gates at once
+     */
+    public static TariffEngine getShared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    private static final class SharedHolder {
+        private static final TariffEngine INSTANCE = fromSystemProperties();
+    }
+
+    public double price(String lot, ParkingType parkingType, long inMillis, long outMillis, boolean discount) {
+        return getTariff(lot, parkingType).price(inMillis, outMillis, discount);
+    }
+
+    public Tariff getTariff(String lot, ParkingType parkingType) {
+        Objects.requireNonNull(parkingType, "parkingType");
+        Map<String, Map<ParkingType, Tariff>> current = tariffs;
+        Map<ParkingType, Tariff> lotTariffs = current.get(lot);
+        Tariff tariff = lotTariffs == null ? null : lotTariffs.get(parkingType);
+        return tariff != null ? tariff : current.get(DEFAULT_LOT).get(parkingType);
+    }
+
+    /**
+     * Compiles the tariffs and swaps them in. The current tariffs are kept when a rule is invalid.
+     * @throws IllegalArgumentException when a rule cannot be parsed
+     */
+    public void load(Properties properties) {
+        TimeZone timeZone = TimeZone.getTimeZone(properties.getProperty("timeZone", TimeZone.getDefault().getID()));
+        Set<String> lots = new HashSet<>();
+        lots.add(DEFAULT_LOT);
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (dot > 0) {
+                lots.add(key.substring(0, dot));
+            }
+        }
+        Map<String, Map<ParkingType, Tariff>> compiled = new HashMap<>();
+        for (String lot : lots) {
+            Map<ParkingType, Tariff> lotTariffs = new EnumMap<>(ParkingType.class);
+            for (ParkingType parkingType : ParkingType.values()) {
+                String prefix = lot + "." + parkingType + ".";
+                if (DEFAULT_LOT.equals(lot) || hasRules(properties, prefix)) {
+                    lotTariffs.put(parkingType, compile(properties, prefix, parkingType, timeZone));
+                }
+            }
+            compiled.put(lot, Collections.unmodifiableMap(lotTariffs));
+        }
+        tariffs = Collections.unmodifiableMap(compiled);
+        logger.info("Loaded tariffs for lots " + compiled.keySet());
+    }
+
+    /**
+     * Loads the tariffs from a properties file.
+     * @return false if the file could not be read or holds an invalid rule, the current tariffs being kept
+     */
+    public boolean reload(Path file) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            load(properties);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to load tariffs from " + file + ", keeping the current ones", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reloads the tariffs whenever the file is modified, checking it periodically on a daemon thread.
+     */
+    public ScheduledExecutorService startAutoReload(final Path file, long periodMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tariff-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long[] lastModified = {lastModified(file)};
+        scheduler.scheduleWithFixedDelay(() -> {
+            long modified = lastModified(file);
+            if (modified != lastModified[0]) {
+                lastModified[0] = modified;
+                reload(file);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static boolean hasRules(Properties properties, String prefix) {
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Tariff compile(Properties properties, String prefix, ParkingType parkingType, TimeZone timeZone) {
+        try {
+            double defaultRate = parkingType == ParkingType.CAR ? Fare.CAR_RATE_PER_HOUR : Fare.BIKE_RATE_PER_HOUR;
+            long rate = Tariff.parseAmount(properties.getProperty(prefix + "rate", Double.toString(defaultRate)));
+            List<Tariff.Band> bands = new ArrayList<>();
+            String bandRules = properties.getProperty(prefix + "bands", "");
+            for (String band : bandRules.split(";")) {
+                if (!band.trim().isEmpty()) {
+                    bands.add(Tariff.Band.parse(band));
+                }
+            }
+            long dailyCap = Tariff.parseAmount(properties.getProperty(prefix + "dailyCap", "0"));
+            int freeMinutes = Integer.parseInt(properties.getProperty(prefix + "freeMinutes", Integer.toString(DEFAULT_FREE_MINUTES)).trim());
+            double discount = Double.parseDouble(properties.getProperty(prefix + "discount", Double.toString(DEFAULT_DISCOUNT)).trim());
+            return new Tariff(rate, bands, dailyCap, freeMinutes, discount, timeZone);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid tariff rules " + prefix + "*: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/* GET_TICKET: open ticket of a vehicle, oldest first */
+create index TICKET_VEHICLE_OPEN on ticket(VEHICLE_REG_NUMBER, OUT_TIME, IN_TIME);
+
+/* GET_LAST_TICKET: latest ticket of a vehicle */
+create index TICKET_VEHICLE_IN_TIME on ticket(VEHICLE_REG_NUMBER, IN_TIME);
+
+/* GET_TICKETS_IN_PERIOD: tickets entered before the end of the report period */
+create index TICKET_IN_TIME on ticket(IN_TIME);
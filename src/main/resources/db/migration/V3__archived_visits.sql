@@ -0,0 +1,2 @@
+/* Visits whose ticket was moved to the archive files, still counted by the repricing job */
+alter table vehicle_visit add column NB_ARCHIVED int NOT NULL default 0;
@@ -0,0 +1,10 @@
+/* Spots of resources/Data.sql, so that a new database such as the embedded one can be used right away.
+   Only an empty parking table is seeded: an existing lot keeps its own spots. */
+insert into parking(PARKING_NUMBER, AVAILABLE, TYPE)
+ select s.PARKING_NUMBER, s.AVAILABLE, s.TYPE from (
+  select 1 as PARKING_NUMBER, true as AVAILABLE, 'CAR' as TYPE
+  union all select 2, true, 'CAR'
+  union all select 3, true, 'CAR'
+  union all select 4, true, 'BIKE'
+  union all select 5, true, 'BIKE') s
+ where not exists (select 1 from parking);
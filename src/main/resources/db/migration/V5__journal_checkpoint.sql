@@ -0,0 +1,4 @@
+/* Sequence number of the last ticket journal record written to the database, per journal */
+create table if not exists journal_checkpoint(
+ NAME varchar(50) PRIMARY KEY,
+ LAST_SEQ bigint NOT NULL);
@@ -0,0 +1,7 @@
+/* Visits closed before vehicle_visit existed, for the plates it does not count yet, so returning
+   customers of an upgraded database keep their discount */
+insert into vehicle_visit(VEHICLE_REG_NUMBER, NB_VISITS)
+ select t.VEHICLE_REG_NUMBER, count(*) from ticket t
+ where t.OUT_TIME is not null
+ and not exists (select 1 from vehicle_visit v where v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER)
+ group by t.VEHICLE_REG_NUMBER;
@@ -0,0 +1,152 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.ArchiveJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ArchiveJobTest {
+
+    private static final long JAN = 1704067200000L; // 2024-01-01T00:00Z
+    private static final long FEB = 1706745600000L; // 2024-02-01T00:00Z
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long CUTOFF = 1709251200000L; // 2024-03-01T00:00Z
+
+    @Mock
+    private TicketDAO ticketDAO;
+
+    private Path archiveDirectory;
+    private Path checkpointFile;
+    private ArchiveJob archiveJob;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        archiveDirectory = Files.createTempDirectory("archive");
+        checkpointFile = archiveDirectory.resolve("archive.checkpoint");
+        archiveJob = new ArchiveJob(ticketDAO, archiveDirectory, checkpointFile, 365, 2, 0, ZoneOffset.UTC);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(archiveDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(archiveDirectory);
+    }
+
+    private List<String> readArchive(String month) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(archiveDirectory.resolve("tickets-" + month + ".csv.gz"))), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void ticketsAreWrittenPerMonthThenDeletedBatchByBatch() throws Exception {
+        doAnswer(invocation -> {
+            TicketDAO.ArchivedTicketHandler handler = invocation.getArgument(3);
+            handler.onTicket(1, 1, "AB", 1.5, JAN, JAN + HOUR);
+            handler.onTicket(2, 4, "CD", 0, FEB, FEB + HOUR);
+            return 2;
+        }).when(ticketDAO).forEachTicketToArchive(eq(0), eq(CUTOFF), eq(2), any(TicketDAO.ArchivedTicketHandler.class));
+        doAnswer(invocation -> {
+            TicketDAO.ArchivedTicketHandler handler = invocation.getArgument(3);
+            handler.onTicket(3, 2, "AB", 3.0, JAN + 2 * HOUR, JAN + 4 * HOUR);
+            return 1;
+        }).when(ticketDAO).forEachTicketToArchive(eq(2), eq(CUTOFF), eq(2), any(TicketDAO.ArchivedTicketHandler.class));
+        doReturn(2).when(ticketDAO).deleteArchivedTickets(1, 2, CUTOFF);
+        doReturn(1).when(ticketDAO).deleteArchivedTickets(3, 3, CUTOFF);
+
+        ArchiveJob.Report report = archiveJob.run(CUTOFF);
+
+        assertEquals(Arrays.asList("id,parking_number,vehicle_reg_number,price,in_time,out_time",
+                "1,1,AB,1.5,2024-01-01T00:00,2024-01-01T01:00",
+                "3,2,AB,3.0,2024-01-01T02:00,2024-01-01T04:00"), readArchive("2024-01"));
+        assertEquals(Arrays.asList("id,parking_number,vehicle_reg_number,price,in_time,out_time",
+                "2,4,CD,0.0,2024-02-01T00:00,2024-02-01T01:00"), readArchive("2024-02"));
+        assertEquals(3, report.getArchived());
+        assertEquals(3, report.getDeleted());
+        assertEquals(2, report.getBatches());
+        assertEquals(2, report.getFiles());
+        assertEquals(3, report.getLastId());
+        assertFalse(Files.exists(checkpointFile), "A completed run removes its checkpoint");
+    }
+
+    @Test
+    public void runGoesOnAfterACheckpointedBatchThatWasDeleted() throws Exception {
+        Files.write(checkpointFile, ("0,41," + CUTOFF + ",tickets-2024-01.csv.gz,0").getBytes(StandardCharsets.UTF_8));
+        doReturn(0).when(ticketDAO).forEachTicketToArchive(eq(0), eq(CUTOFF), eq(1), any(TicketDAO.ArchivedTicketHandler.class));
+        doReturn(0).when(ticketDAO).forEachTicketToArchive(eq(41), eq(CUTOFF), eq(2), any(TicketDAO.ArchivedTicketHandler.class));
+
+        ArchiveJob.Report report = archiveJob.run(CUTOFF + HOUR);
+
+        assertEquals(0, report.getDeleted());
+        assertEquals(0, report.getArchived());
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void checkpointedBatchStillInTheTableIsTruncatedAndWrittenAgain() throws Exception {
+        doAnswer(invocation -> {
+            TicketDAO.ArchivedTicketHandler handler = invocation.getArgument(3);
+            handler.onTicket(1, 1, "AB", 1.5, JAN, JAN + HOUR);
+            return 1;
+        }).when(ticketDAO).forEachTicketToArchive(eq(0), eq(CUTOFF), eq(2), any(TicketDAO.ArchivedTicketHandler.class));
+        doReturn(1).when(ticketDAO).deleteArchivedTickets(1, 1, CUTOFF);
+        archiveJob.run(CUTOFF);
+        Path january = archiveDirectory.resolve("tickets-2024-01.csv.gz");
+        long size = Files.size(january);
+        // ticket 2 was appended, then the run stopped before deleting it
+        Files.write(checkpointFile, ("1,2," + CUTOFF + ",tickets-2024-01.csv.gz," + size).getBytes(StandardCharsets.UTF_8));
+        Files.write(january, new byte[]{0x1f, (byte) 0x8b, 8}, StandardOpenOption.APPEND);
+        doAnswer(invocation -> {
+            TicketDAO.ArchivedTicketHandler handler = invocation.getArgument(3);
+            handler.onTicket(2, 2, "CD", 3.0, JAN + 2 * HOUR, JAN + 4 * HOUR);
+            return 1;
+        }).when(ticketDAO).forEachTicketToArchive(eq(1), eq(CUTOFF), anyInt(), any(TicketDAO.ArchivedTicketHandler.class));
+        doReturn(1).when(ticketDAO).deleteArchivedTickets(2, 2, CUTOFF);
+
+        ArchiveJob.Report report = archiveJob.run(CUTOFF);
+
+        assertEquals(Arrays.asList("id,parking_number,vehicle_reg_number,price,in_time,out_time",
+                "1,1,AB,1.5,2024-01-01T00:00,2024-01-01T01:00",
+                "2,2,CD,3.0,2024-01-01T02:00,2024-01-01T04:00"), readArchive("2024-01"));
+        assertEquals(1, report.getArchived());
+        assertEquals(1, report.getDeleted());
+        assertFalse(Files.exists(checkpointFile));
+    }
+}
@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.AsyncParkingService;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class AsyncParkingServiceTest {
+
+    private static final String VEH_REG = "ABCDEF";
+
+    @Mock
+    private ParkingService parkingService;
+
+    @Test
+    public void enterVehicleCompletesWithTheTicket() throws Exception {
+        ParkingResult result = ParkingResult.ok(new Ticket());
+        when(parkingService.enterVehicle(ParkingType.CAR, VEH_REG)).thenReturn(result);
+
+        try (AsyncParkingService asyncParkingService = new AsyncParkingService(parkingService, 2, 4)) {
+            assertSame(result, asyncParkingService.enterVehicle(ParkingType.CAR, VEH_REG).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void exitVehicleFailureCompletesTheFutureExceptionally() throws Exception {
+        when(parkingService.exitVehicle(VEH_REG)).thenThrow(new IllegalStateException("DB Error"));
+
+        try (AsyncParkingService asyncParkingService = new AsyncParkingService(parkingService, 2, 4)) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> asyncParkingService.exitVehicle(VEH_REG).get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void saturatedServiceRejectsNewRequests() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(parkingService.exitVehicle(VEH_REG)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+
+        try (AsyncParkingService asyncParkingService = new AsyncParkingService(parkingService, 1, 1)) {
+            CompletableFuture<ParkingResult> running = asyncParkingService.exitVehicle(VEH_REG);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<ParkingResult> queued = asyncParkingService.exitVehicle(VEH_REG);
+            assertEquals(1, asyncParkingService.getQueueDepth());
+
+            CompletableFuture<ParkingResult> rejected = asyncParkingService.exitVehicle(VEH_REG);
+            ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
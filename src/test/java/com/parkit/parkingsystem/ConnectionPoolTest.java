@@ -0,0 +1,143 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ConnectionPoolTest {
+
+    @Mock
+    private ConnectionPool.ConnectionFactory connectionFactory;
+    @Mock
+    private Connection firstConnection;
+    @Mock
+    private Connection secondConnection;
+    @Mock
+    private PreparedStatement firstStatement;
+    @Mock
+    private PreparedStatement secondStatement;
+
+    private ConnectionPool connectionPool;
+
+    @AfterEach
+    void tearDownPerTest() {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+    }
+
+    @Test
+    public void releasedConnectionIsReused() throws Exception {
+        connectionPool = new ConnectionPool(connectionFactory, 2, 100, 60000, 1, 60000, 8);
+        when(connectionFactory.create()).thenReturn(firstConnection);
+        when(firstConnection.getAutoCommit()).thenReturn(true);
+
+        Connection borrowed = connectionPool.borrow();
+        assertTrue(connectionPool.release(borrowed));
+        Connection borrowedAgain = connectionPool.borrow();
+
+        assertSame(firstConnection, borrowedAgain);
+        assertEquals(1, connectionPool.getCreatedCount());
+        verify(firstConnection, never()).close();
+    }
+
+    @Test
+    public void borrowTimesOutWhenPoolIsExhausted() throws Exception {
+        connectionPool = new ConnectionPool(connectionFactory, 1, 50, 60000, 1, 60000, 8);
+        when(connectionFactory.create()).thenReturn(firstConnection);
+
+        connectionPool.borrow();
+
+        assertThrows(SQLTransientConnectionException.class, () -> connectionPool.borrow());
+        assertEquals(1, connectionPool.getActiveCount());
+    }
+
+    @Test
+    public void idleConnectionPastTimeoutIsEvicted() throws Exception {
+        connectionPool = new ConnectionPool(connectionFactory, 2, 100, -1, 1, 60000, 8);
+        when(connectionFactory.create()).thenReturn(firstConnection, secondConnection);
+        when(firstConnection.getAutoCommit()).thenReturn(true);
+
+        connectionPool.release(connectionPool.borrow());
+        Connection borrowed = connectionPool.borrow();
+
+        assertSame(secondConnection, borrowed);
+        verify(firstConnection).close();
+    }
+
+    @Test
+    public void openTransactionIsRolledBackOnRelease() throws Exception {
+        connectionPool = new ConnectionPool(connectionFactory, 1, 100, 60000, 1, 60000, 8);
+        when(connectionFactory.create()).thenReturn(firstConnection);
+        when(firstConnection.getAutoCommit()).thenReturn(false);
+
+        connectionPool.release(connectionPool.borrow());
+
+        verify(firstConnection).rollback();
+        verify(firstConnection).setAutoCommit(true);
+        assertEquals(1, connectionPool.getIdleCount());
+    }
+
+    @Test
+    public void foreignConnectionIsNotReleased() {
+        connectionPool = new ConnectionPool(connectionFactory, 1, 100, 60000, 1, 60000, 8);
+
+        assertFalse(connectionPool.release(firstConnection));
+    }
+
+    @Test
+    public void statementIsPreparedOncePerConnection() throws Exception {
+        connectionPool = new ConnectionPool(connectionFactory, 1, 100, 60000, 1, 60000, 8);
+        when(connectionFactory.create()).thenReturn(firstConnection);
+        when(firstConnection.getAutoCommit()).thenReturn(true);
+        when(firstConnection.prepareStatement("select 1")).thenReturn(firstStatement);
+        when(firstStatement.getConnection()).thenReturn(firstConnection);
+
+        Connection borrowed = connectionPool.borrow();
+        PreparedStatement ps = connectionPool.prepareStatement(borrowed, "select 1");
+        assertTrue(connectionPool.releaseStatement(ps));
+        connectionPool.release(borrowed);
+
+        borrowed = connectionPool.borrow();
+        assertSame(firstStatement, connectionPool.prepareStatement(borrowed, "select 1"));
+
+        verify(firstConnection, times(1)).prepareStatement("select 1");
+        verify(firstStatement).clearParameters();
+        verify(firstStatement, never()).close();
+        assertEquals(1, connectionPool.getStatementCacheHitCount());
+        assertEquals(1, connectionPool.getStatementCacheMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementIsClosedWhenCacheIsFull() throws Exception {
+        connectionPool = new ConnectionPool(connectionFactory, 1, 100, 60000, 1, 60000, 1);
+        when(connectionFactory.create()).thenReturn(firstConnection);
+        // doReturn: stubbing "select 2" with when() would call the mock with an argument it is not stubbed for
+        doReturn(firstStatement).when(firstConnection).prepareStatement("select 1");
+        doReturn(secondStatement).when(firstConnection).prepareStatement("select 2");
+
+        Connection borrowed = connectionPool.borrow();
+        connectionPool.prepareStatement(borrowed, "select 1");
+        connectionPool.prepareStatement(borrowed, "select 2");
+
+        verify(firstStatement).close();
+        assertEquals(1, connectionPool.getStatementCacheEvictionCount());
+        when(firstStatement.getConnection()).thenReturn(borrowed);
+        assertFalse(connectionPool.releaseStatement(firstStatement), "An evicted statement is no longer cached");
+    }
+}
@@ -0,0 +1,22 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DataBaseConfigTest {
+
+    @Test
+    public void mysqlUrlsStreamTheirScans() {
+        assertEquals("jdbc:mysql://db:3306/prod?serverTimezone=UTC&useCursorFetch=true",
+                DataBaseConfig.withCursorFetch("jdbc:mysql://db:3306/prod?serverTimezone=UTC"));
+        assertEquals("jdbc:mysql://db:3306/prod?useCursorFetch=true", DataBaseConfig.withCursorFetch("jdbc:mysql://db:3306/prod"));
+    }
+
+    @Test
+    public void cursorFetchSetOnTheUrlIsKept() {
+        assertEquals("jdbc:mysql://db:3306/prod?useCursorFetch=false", DataBaseConfig.withCursorFetch("jdbc:mysql://db:3306/prod?useCursorFetch=false"));
+        assertEquals("jdbc:h2:mem:test;MODE=MySQL", DataBaseConfig.withCursorFetch("jdbc:h2:mem:test;MODE=MySQL"));
+    }
+}
@@ -184,5 +184,23 @@ public class FareCalculatorServiceTest {
 		
 		assertEquals( 1 * 0.95 * Fare.BIKE_RATE_PER_HOUR, ticket.getPrice());
 		}
+
+	@Test
+	void calculateFareWithoutOutTime() {
+		ticket.setInTime(new Date());
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR,false));
+
+		assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFare(ticket));
+	}
+
+	@Test
+	void calculateFareFromEpochMillis() {
+		long inMillis = 1700000000000L;
+		long outMillis = inMillis + 2 * 60 * 60 * 1000;
+
+		assertEquals(2 * Fare.CAR_RATE_PER_HOUR, fareCalculatorService.calculateFare(inMillis, outMillis, ParkingType.CAR, false));
+		assertEquals(2 * Fare.BIKE_RATE_PER_HOUR * 0.95, fareCalculatorService.calculateFare(inMillis, outMillis, ParkingType.BIKE, true));
+		assertEquals(0, fareCalculatorService.calculateFare(inMillis, inMillis + 29 * 60 * 1000, ParkingType.CAR, true));
+		assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFare(outMillis, inMillis, ParkingType.CAR, false));
+	}
 }
-    
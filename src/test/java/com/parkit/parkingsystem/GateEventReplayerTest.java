@@ -0,0 +1,124 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.GateEvent;
+import com.parkit.parkingsystem.model.ParkingResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.GateEventReplayer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class GateEventReplayerTest {
+
+    @Mock
+    private ParkingService parkingService;
+    @Mock
+    private ParkingSpotDAO parkingSpotDAO;
+    @Mock
+    private UnitOfWork unitOfWork;
+
+    @Test
+    public void parseCsvEvent() {
+        GateEvent event = GateEventReplayer.parse("1700000000000,entry,AB-123-CD,car");
+
+        assertEquals(new Date(1700000000000L), event.getTime());
+        assertEquals(GateEvent.Direction.ENTRY, event.getDirection());
+        assertEquals("AB-123-CD", event.getVehicleRegNumber());
+        assertEquals(ParkingType.CAR, event.getParkingType());
+    }
+
+    @Test
+    public void parseNdjsonEvent() {
+        GateEvent event = GateEventReplayer.parse("{\"timestamp\":\"2023-11-14T22:13:20Z\",\"event\":\"EXIT\",\"plate\":\"AB-123-CD\"}");
+
+        assertEquals(new Date(1700000000000L), event.getTime());
+        assertEquals(GateEvent.Direction.EXIT, event.getDirection());
+        assertEquals("AB-123-CD", event.getVehicleRegNumber());
+        assertNull(event.getParkingType());
+    }
+
+    @Test
+    public void entryWithoutTypeIsMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> GateEventReplayer.parse("1700000000000,ENTRY,AB-123-CD"));
+    }
+
+    @Test
+    public void plateLongerThanTheColumnIsMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> GateEventReplayer.parse("1700000000000,ENTRY,AB-123-CD-45,car"));
+    }
+
+    @Test
+    public void replayDrivesTheServiceAndReportsOccupancy() throws Exception {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        when(parkingService.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(parkingService.enterVehicle(eq(unitOfWork), eq(ParkingType.CAR), eq("AB-123-CD"), any(Date.class))).thenReturn(ParkingResult.ok(ticket));
+        doReturn(ParkingResult.ok(ticket)).when(parkingService).exitVehicle(eq(unitOfWork), eq("AB-123-CD"), any(Date.class));
+        doReturn(ParkingResult.ticketNotFound()).when(parkingService).exitVehicle(eq(unitOfWork), eq("ZZ-999-ZZ"), any(Date.class));
+        when(parkingSpotDAO.getAllParkingSpots()).thenReturn(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(2, ParkingType.CAR, false),
+                new ParkingSpot(3, ParkingType.BIKE, true)));
+
+        String events = "timestamp,event,plate,type\n"
+                + "1700000000000,ENTRY,AB-123-CD,CAR\n"
+                + "not an event\n"
+                + "1700003600000,EXIT,AB-123-CD\n"
+                + "1700003600000,EXIT,ZZ-999-ZZ\n";
+        GateEventReplayer.Report report = new GateEventReplayer(parkingService, parkingSpotDAO, 10)
+                .replay(new StringReader(events));
+
+        verify(parkingService).exitVehicle(unitOfWork, "AB-123-CD", new Date(1700003600000L));
+        // the plate comes back: its exit starts a second transaction
+        verify(unitOfWork, times(2)).commit();
+        assertEquals(3, report.getRead());
+        assertEquals(1, report.getMalformed());
+        assertEquals(1, report.getEntries());
+        assertEquals(1, report.getExits());
+        assertEquals(1, report.getTicketNotFound());
+        assertEquals(1, report.getOccupied(ParkingType.CAR));
+        assertEquals(2, report.getCapacity(ParkingType.CAR));
+        assertEquals(0, report.getOccupied(ParkingType.BIKE));
+    }
+
+    @Test
+    public void entryRejectedAfterAnExitIsRetriedOnceTheSpotIsCommitted() throws Exception {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        when(parkingService.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(parkingService.exitVehicle(eq(unitOfWork), eq("AB-123-CD"), any(Date.class))).thenReturn(ParkingResult.ok(ticket));
+        when(parkingService.enterVehicle(eq(unitOfWork), eq(ParkingType.CAR), eq("EF-456-GH"), any(Date.class)))
+                .thenReturn(ParkingResult.noSpotAvailable(), ParkingResult.ok(ticket));
+
+        String events = "1700003600000,EXIT,AB-123-CD\n"
+                + "1700003700000,ENTRY,EF-456-GH,CAR\n";
+        GateEventReplayer.Report report = new GateEventReplayer(parkingService, parkingSpotDAO, 10)
+                .replay(new StringReader(events));
+
+        verify(unitOfWork, times(2)).commit();
+        assertEquals(1, report.getExits());
+        assertEquals(1, report.getEntries());
+        assertEquals(0, report.getNoSpotAvailable());
+    }
+}
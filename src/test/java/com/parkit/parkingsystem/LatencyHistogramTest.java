@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        // 1 to 10000 microseconds
+        for (long micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10_000_000, snapshot.getMaxNanos());
+        assertEquals(5_000_500, snapshot.getMeanNanos(), 1);
+        assertWithin(5_000_000, snapshot.getValueAtPercentile(50));
+        assertWithin(9_900_000, snapshot.getValueAtPercentile(99));
+        assertWithin(9_990_000, snapshot.getValueAtPercentile(99.9));
+        assertEquals(10_000_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.getValueAtPercentile(1));
+        assertEquals(3, snapshot.getValueAtPercentile(50));
+        assertEquals(7, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void minusKeepsOnlyTheInterval() {
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(50_000_000);
+        }
+        LatencyHistogram.Snapshot previous = histogram.snapshot();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(20_000);
+        }
+
+        LatencyHistogram.Snapshot interval = histogram.snapshot().minus(previous);
+
+        assertEquals(100, interval.getCount());
+        assertEquals(20_000, interval.getMeanNanos(), 0.001);
+        assertWithin(20_000, interval.getValueAtPercentile(99));
+        assertWithin(20_000, interval.getMaxNanos());
+    }
+
+    @Test
+    public void emptySnapshotReadsZero() {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMeanNanos());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void registryReturnsTheSameTimerAndCounter() {
+        assertSame(Metrics.timer("test.timer"), Metrics.timer("test.timer"));
+        Metrics.counter("test.counter").add(2);
+        Metrics.gauge("test.gauge.value", () -> 42);
+
+        assertEquals(2L, (long) Metrics.getCounters().get("test.counter"));
+        assertEquals(42L, (long) Metrics.getGauges().get("test.gauge.value"));
+        assertTrue(Metrics.format(Metrics.snapshotTimers()).contains("test.timer"));
+
+        Metrics.removeGauges("test.gauge.");
+        assertTrue(!Metrics.getGauges().containsKey("test.gauge.value"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        // 32 sub-buckets per power of two: at most 1/32 above the value
+        assertTrue(actual >= expected && actual <= expected + expected / 32,
+                "expected about " + expected + " but was " + actual);
+    }
+}
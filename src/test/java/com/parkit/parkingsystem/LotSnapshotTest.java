@@ -0,0 +1,109 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.LotSnapshot;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LotSnapshotTest {
+
+    private Path directory;
+    private Path file;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("snapshot");
+        file = directory.resolve("lot.snapshot");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory.resolve("lot.snapshot.tmp"));
+        Files.delete(directory);
+    }
+
+    private static Ticket ticket(int id, int parkingNumber, String vehicleRegNumber, long inMillis) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.BIKE, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inMillis));
+        return ticket;
+    }
+
+    @Test
+    public void snapshotIsReadBack() throws Exception {
+        List<ParkingSpot> parkingSpots = Arrays.asList(new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(4, ParkingType.BIKE, false));
+        LotSnapshot.write(file, 42, parkingSpots, Collections.singletonList(ticket(7, 4, "ABCDEF", 1000L)));
+
+        LotSnapshot snapshot = LotSnapshot.read(file);
+
+        assertEquals(42, snapshot.getSeq());
+        assertEquals(2, snapshot.getParkingSpots().size());
+        assertEquals(1, snapshot.getParkingSpots().get(0).getId());
+        assertTrue(snapshot.getParkingSpots().get(0).isAvailable());
+        assertEquals(ParkingType.BIKE, snapshot.getParkingSpots().get(1).getParkingType());
+        assertFalse(snapshot.getParkingSpots().get(1).isAvailable());
+        Ticket ticket = snapshot.getOpenTickets().get(0);
+        assertEquals(7, ticket.getId());
+        assertEquals(4, ticket.getParkingSpot().getId());
+        assertEquals("ABCDEF", ticket.getVehicleRegNumber());
+        assertEquals(1000L, ticket.getInTime().getTime());
+        assertFalse(Files.exists(directory.resolve("lot.snapshot.tmp")));
+    }
+
+    @Test
+    public void newSnapshotReplacesThePreviousOne() throws Exception {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int i = 1; i <= 10000; i++) {
+            parkingSpots.add(new ParkingSpot(i, ParkingType.CAR, i % 3 != 0));
+        }
+        LotSnapshot.write(file, 1, parkingSpots, Collections.<Ticket>emptyList());
+        LotSnapshot.write(file, 2, parkingSpots.subList(0, 10), Collections.<Ticket>emptyList());
+
+        LotSnapshot snapshot = LotSnapshot.read(file);
+
+        assertEquals(2, snapshot.getSeq());
+        assertEquals(10, snapshot.getParkingSpots().size());
+        assertFalse(snapshot.getParkingSpots().get(2).isAvailable());
+    }
+
+    @Test
+    public void missingSnapshotReadsNull() throws Exception {
+        assertNull(LotSnapshot.read(file));
+    }
+
+    @Test
+    public void corruptedSnapshotIsRejected() throws Exception {
+        LotSnapshot.write(file, 1, Collections.singletonList(new ParkingSpot(1, ParkingType.CAR, true)),
+                Collections.singletonList(ticket(0, 1, "ABCDEF", 1000L)));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), Files.size(file) - 1);
+        }
+
+        assertThrows(IOException.class, () -> LotSnapshot.read(file));
+    }
+}
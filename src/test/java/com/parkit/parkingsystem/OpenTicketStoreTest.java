@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OpenTicketStore;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OpenTicketStoreTest {
+
+    private static final String VEH_REG = "ABCDEF";
+
+    private OpenTicketStore openTicketStore;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        openTicketStore = new OpenTicketStore();
+    }
+
+    private static Ticket ticket(int id, int parkingNumber, String vehicleRegNumber, long inMillis) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inMillis));
+        return ticket;
+    }
+
+    @Test
+    public void loadedTicketIsReturnedAsACopy() {
+        assertFalse(openTicketStore.isLoaded());
+        openTicketStore.load(Collections.singletonList(ticket(7, 2, VEH_REG, 1000L)));
+
+        Ticket ticket = openTicketStore.get(VEH_REG);
+        ticket.setOutTime(new Date());
+
+        assertTrue(openTicketStore.isLoaded());
+        assertEquals(7, ticket.getId());
+        assertEquals(2, ticket.getParkingSpot().getId());
+        assertEquals(1000L, ticket.getInTime().getTime());
+        assertNotSame(ticket, openTicketStore.get(VEH_REG));
+        assertNull(openTicketStore.get(VEH_REG).getOutTime());
+        assertNull(openTicketStore.get("OTHER"));
+    }
+
+    @Test
+    public void oldestOpenTicketComesFirst() {
+        openTicketStore.load(Arrays.asList(ticket(2, 2, VEH_REG, 2000L), ticket(1, 1, VEH_REG, 1000L)));
+        openTicketStore.add(ticket(3, 3, VEH_REG, 1500L));
+
+        assertEquals(1, openTicketStore.get(VEH_REG).getId());
+        openTicketStore.remove(VEH_REG, 1);
+        assertEquals(3, openTicketStore.get(VEH_REG).getId());
+        openTicketStore.remove(VEH_REG, 3);
+        assertEquals(2, openTicketStore.get(VEH_REG).getId());
+    }
+
+    @Test
+    public void closedTicketLeavesTheStore() {
+        openTicketStore.load(Collections.singletonList(ticket(1, 1, VEH_REG, 1000L)));
+
+        openTicketStore.remove(VEH_REG, 1);
+        openTicketStore.remove("OTHER", 1);
+
+        assertNull(openTicketStore.get(VEH_REG));
+        assertEquals(0, openTicketStore.size());
+    }
+
+    @Test
+    public void pollTakesTheOldestTicketOut() {
+        openTicketStore.load(Arrays.asList(ticket(2, 2, VEH_REG, 2000L), ticket(0, 1, VEH_REG, 1000L)));
+
+        assertEquals(1, openTicketStore.poll(VEH_REG).getParkingSpot().getId());
+        assertEquals(2, openTicketStore.poll(VEH_REG).getId());
+        assertNull(openTicketStore.poll(VEH_REG));
+        assertEquals(0, openTicketStore.size());
+    }
+}
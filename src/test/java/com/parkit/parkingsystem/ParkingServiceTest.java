@@ -3,6 +3,8 @@ package com.parkit.parkingsystem;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.ParkingResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.ParkingService;
@@ -37,6 +39,8 @@ public class ParkingServiceTest {
     private ParkingSpotDAO parkingSpotDAO;
     @Mock
     private  TicketDAO ticketDAO;
+    @Mock
+    private UnitOfWork unitOfWork;
 
     private static final String VEH_REG = "AB-123-CD";
     private ParkingSpot parkingSpot;
@@ -66,49 +70,66 @@ public class ParkingServiceTest {
     	
 		when(inputReaderUtil.readSelection()).thenReturn(1); 								
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG);
-    	when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1); 			
+    	when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+    	when(parkingSpotDAO.claimNextAvailableSlot(unitOfWork, ParkingType.CAR)).thenReturn(2);
     	
     	parkingService.processIncomingVehicle();
     	
-        ArgumentCaptor<ParkingSpot> spotCaptor = ArgumentCaptor.forClass(ParkingSpot.class); 
-        verify(parkingSpotDAO).updateParking(spotCaptor.capture());							
-        ParkingSpot spotUsed = spotCaptor.getValue();										 
-        
-        assertEquals(1, spotUsed.getId());													 
-        assertFalse(spotUsed.isAvailable());												 
-        assertEquals(ParkingType.CAR, spotUsed.getParkingType());						     
+        verify(parkingSpotDAO).claimNextAvailableSlot(unitOfWork, ParkingType.CAR);
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
 
         ArgumentCaptor<Ticket> ticketCaptor = ArgumentCaptor.forClass(Ticket.class);         
-        verify(ticketDAO).saveTicket(ticketCaptor.capture());							     
+        verify(ticketDAO).saveTicket(eq(unitOfWork), ticketCaptor.capture());							     
+        verify(unitOfWork).commit();
         Ticket savedTicket = ticketCaptor.getValue();                                        
+        ParkingSpot spotUsed = savedTicket.getParkingSpot();
         
+        assertEquals(2, spotUsed.getId());
+        assertFalse(spotUsed.isAvailable());
+        assertEquals(ParkingType.CAR, spotUsed.getParkingType());
         assertEquals("AB-123-CD", savedTicket.getVehicleRegNumber());                        
-        assertEquals(spotUsed, savedTicket.getParkingSpot());								 
         assertNotNull(savedTicket.getInTime());											     
         assertNull(savedTicket.getOutTime());                                                
     }
     
     
+    @Test
+    public void testProcessIncomingVehicleNoSpotClaimed() throws Exception {
+
+		when(inputReaderUtil.readSelection()).thenReturn(1);
+		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG);
+    	when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+    	when(parkingSpotDAO.claimNextAvailableSlot(unitOfWork, ParkingType.CAR)).thenReturn(0);
+
+    	parkingService.processIncomingVehicle();
+
+        verify(ticketDAO, never()).saveTicket(any(UnitOfWork.class), any(Ticket.class));
+        verify(unitOfWork, never()).commit();
+        verify(unitOfWork).close();
+    }
+
     @Test
     public void processExitingVehicleTest() throws Exception {              
         
 		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG); 							
-		when(ticketDAO.getTicket(VEH_REG)).thenReturn(ticket); 							    				
-        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);                   				
-        when(ticketDAO.getNbTicket(VEH_REG)).thenReturn(1); 												
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);        				
+		when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+		when(ticketDAO.getTicket(unitOfWork, VEH_REG)).thenReturn(ticket); 							    				
+        when(ticketDAO.updateTicket(eq(unitOfWork), any(Ticket.class))).thenReturn(true);                   				
+        ticket.setNbPreviousTickets(1);
+        when(parkingSpotDAO.updateParking(eq(unitOfWork), any(ParkingSpot.class))).thenReturn(true);        				
 
         parkingService.processExitingVehicle();
         
         ArgumentCaptor<Ticket> cap = ArgumentCaptor.forClass(Ticket.class);                 				
-        verify(ticketDAO, times(1)).updateTicket(cap.capture());                            				
+        verify(ticketDAO, times(1)).updateTicket(eq(unitOfWork), cap.capture());                            				
         Ticket updatedTicket = cap.getValue();                                              				
         
         assertNotNull(updatedTicket.getOutTime(), "Pas d'heure de sortie renseignée");      				
         
         ArgumentCaptor<ParkingSpot> parkingSpotCaptor = ArgumentCaptor.forClass(ParkingSpot.class); 		
-        verify(parkingSpotDAO, times(1)).updateParking(parkingSpotCaptor.capture());         				
+        verify(parkingSpotDAO, times(1)).updateParking(eq(unitOfWork), parkingSpotCaptor.capture());         				
         ParkingSpot updatedSpot = parkingSpotCaptor.getValue();									    		
+        verify(unitOfWork).commit();
        
         assertTrue(updatedSpot.isAvailable(), "La place de parking doit être libérée lors de la sortie"); 	
         assertEquals(1.5 * 0.95, updatedTicket.getPrice(), 0.01, "La réduction doit s'appliquer");          
@@ -118,14 +139,16 @@ public class ParkingServiceTest {
     public void processExitingVehicleTestUnableUpdate() throws Exception {                         
     	
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG);
-        when(ticketDAO.getTicket(VEH_REG)).thenReturn(ticket);
-        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(false);                        
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getTicket(unitOfWork, VEH_REG)).thenReturn(ticket);
+        when(ticketDAO.updateTicket(eq(unitOfWork), any(Ticket.class))).thenReturn(false);                        
         
     	parkingService.processExitingVehicle();
     	
-        verify(ticketDAO).getTicket(VEH_REG);													   
-        verify(ticketDAO).updateTicket(any(Ticket.class)); 										  
-        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));                
+        verify(ticketDAO).getTicket(unitOfWork, VEH_REG);													   
+        verify(ticketDAO).updateTicket(eq(unitOfWork), any(Ticket.class)); 										  
+        verify(parkingSpotDAO, never()).updateParking(any(UnitOfWork.class), any(ParkingSpot.class));                
+        verify(unitOfWork, never()).commit();
     } 
     
     @Test
@@ -168,8 +191,9 @@ public class ParkingServiceTest {
 
     	when(inputReaderUtil.readSelection()).thenReturn(1);
     	when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG);
-    	when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
-    	when(ticketDAO.getNbTicket(VEH_REG)).thenReturn(1);
+    	when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+    	when(ticketDAO.getNbTicket(unitOfWork, VEH_REG)).thenReturn(1);
+    	when(parkingSpotDAO.claimNextAvailableSlot(unitOfWork, ParkingType.CAR)).thenReturn(1);
 
     	parkingService.processIncomingVehicle();
 
@@ -197,9 +221,13 @@ public class ParkingServiceTest {
     	
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG);
         
-        when(ticketDAO.getTicket(VEH_REG)).thenThrow(new RuntimeException("DB Error"));
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getTicket(unitOfWork, VEH_REG)).thenThrow(new RuntimeException("DB Error"));
         
         parkingService.processExitingVehicle(); 
+
+        verify(unitOfWork, never()).commit();
+        verify(unitOfWork).close();
     }
     
     @Test
@@ -207,9 +235,56 @@ public class ParkingServiceTest {
     	
         ParkingService parkingServiceSpy = Mockito.spy(parkingService);
         
-        doThrow(new RuntimeException("Boom!")).when(parkingServiceSpy).getNextParkingNumberIfAvailable();
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG);
+        doThrow(new RuntimeException("Boom!")).when(parkingServiceSpy).enterVehicle(ParkingType.CAR, VEH_REG);
 
         parkingServiceSpy.processIncomingVehicle();
     }
+
+    @Test
+    public void processIncomingVehicleClaimsWithoutLookingUpAFreeSpot() throws Exception {
+
+        when(inputReaderUtil.readSelection()).thenReturn(2);
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEH_REG);
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(parkingSpotDAO.claimNextAvailableSlot(unitOfWork, ParkingType.BIKE)).thenReturn(4);
+
+        parkingService.processIncomingVehicle();
+
+        verify(parkingSpotDAO, never()).getNextAvailableSlot(any(ParkingType.class));
+        verify(unitOfWork).commit();
+    }
     
-}
\ No newline at end of file
+    @Test
+    public void enterVehicleWithoutConsole() throws Exception {
+
+        ParkingService headlessService = new ParkingService(parkingSpotDAO, ticketDAO);
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getNbTicket(unitOfWork, VEH_REG)).thenReturn(2);
+        when(parkingSpotDAO.claimNextAvailableSlot(unitOfWork, ParkingType.BIKE)).thenReturn(4);
+
+        ParkingResult result = headlessService.enterVehicle(ParkingType.BIKE, VEH_REG);
+
+        assertEquals(ParkingResult.Status.OK, result.getStatus());
+        assertEquals(4, result.getParkingNumber());
+        assertNotNull(result.getInTime());
+        assertTrue(result.isRecurringUser());
+        verifyZeroInteractions(inputReaderUtil);
+    }
+
+    @Test
+    public void exitVehicleWithoutOpenTicket() throws Exception {
+
+        ParkingService headlessService = new ParkingService(parkingSpotDAO, ticketDAO);
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getTicket(unitOfWork, VEH_REG)).thenReturn(null);
+
+        ParkingResult result = headlessService.exitVehicle(VEH_REG);
+
+        assertEquals(ParkingResult.Status.TICKET_NOT_FOUND, result.getStatus());
+        assertNull(result.getTicket());
+        verify(unitOfWork, never()).commit();
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParkingSpotIndexTest {
+
+    private ParkingSpotIndex parkingSpotIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        parkingSpotIndex = new ParkingSpotIndex();
+        parkingSpotIndex.load(lot(true, true, true, true, true));
+    }
+
+    private static List<ParkingSpot> lot(boolean spot1, boolean spot2, boolean spot3, boolean spot4, boolean spot5) {
+        return Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, spot1),
+                new ParkingSpot(2, ParkingType.CAR, spot2),
+                new ParkingSpot(3, ParkingType.CAR, spot3),
+                new ParkingSpot(4, ParkingType.BIKE, spot4),
+                new ParkingSpot(5, ParkingType.BIKE, spot5));
+    }
+
+    @Test
+    public void lowestAvailableSpotPerType() {
+        assertTrue(parkingSpotIndex.isLoaded());
+        assertEquals(1, parkingSpotIndex.getLowestAvailable(ParkingType.CAR));
+        assertEquals(4, parkingSpotIndex.getLowestAvailable(ParkingType.BIKE));
+    }
+
+    @Test
+    public void updateIsReflectedInNextAllocation() {
+        parkingSpotIndex.update(1, false);
+        assertEquals(2, parkingSpotIndex.getLowestAvailable(ParkingType.CAR));
+
+        parkingSpotIndex.update(1, true);
+        assertEquals(1, parkingSpotIndex.getLowestAvailable(ParkingType.CAR));
+    }
+
+    @Test
+    public void noSpotLeftReturnsZero() {
+        parkingSpotIndex.update(4, false);
+        parkingSpotIndex.update(5, false);
+
+        assertEquals(0, parkingSpotIndex.getLowestAvailable(ParkingType.BIKE));
+    }
+
+    @Test
+    public void countersFollowAvailabilityFlips() {
+        assertEquals(3, parkingSpotIndex.getNbAvailable(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.getNbSpots(ParkingType.BIKE));
+
+        parkingSpotIndex.update(1, false);
+        parkingSpotIndex.update(1, false);
+        assertEquals(2, parkingSpotIndex.pollLowestAvailable(ParkingType.CAR));
+        assertEquals(1, parkingSpotIndex.getNbAvailable(ParkingType.CAR));
+
+        parkingSpotIndex.update(1, true);
+        parkingSpotIndex.update(1, true);
+        assertEquals(2, parkingSpotIndex.getNbAvailable(ParkingType.CAR));
+        assertEquals(3, parkingSpotIndex.getNbSpots(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.getNbAvailable(ParkingType.BIKE));
+    }
+
+    @Test
+    public void reloadReseedsCounters() {
+        parkingSpotIndex.update(4, false);
+
+        parkingSpotIndex.load(lot(false, false, true, true, true));
+
+        assertEquals(1, parkingSpotIndex.getNbAvailable(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.getNbAvailable(ParkingType.BIKE));
+    }
+
+    @Test
+    public void driftIsFoundAndRepaired() {
+        long since = parkingSpotIndex.getClock();
+        assertTrue(parkingSpotIndex.findDrift(lot(true, true, true, true, true), since).isEmpty());
+
+        Set<Integer> drifted = parkingSpotIndex.findDrift(lot(false, true, true, false, true), since);
+
+        assertEquals(new HashSet<>(Arrays.asList(1, 4)), drifted);
+        assertEquals(2, parkingSpotIndex.repair(lot(false, true, true, false, true), drifted, since));
+        assertEquals(2, parkingSpotIndex.getLowestAvailable(ParkingType.CAR));
+        assertEquals(5, parkingSpotIndex.getLowestAvailable(ParkingType.BIKE));
+        assertEquals(1, parkingSpotIndex.getNbAvailable(ParkingType.BIKE));
+        assertTrue(parkingSpotIndex.findDrift(lot(false, true, true, false, true), since).isEmpty());
+    }
+
+    @Test
+    public void repairKeepsGateChangesMadeAfterTheRead() {
+        long since = parkingSpotIndex.getClock();
+        // the table was read before spot 1 was taken and spot 4 given back by the gates
+        List<ParkingSpot> parkingSpots = lot(true, true, true, false, true);
+        parkingSpotIndex.update(1, false);
+        parkingSpotIndex.update(4, false);
+        parkingSpotIndex.update(4, true);
+
+        Set<Integer> drifted = parkingSpotIndex.findDrift(parkingSpots, since);
+
+        assertTrue(drifted.isEmpty());
+        assertEquals(0, parkingSpotIndex.repair(parkingSpots, Collections.singleton(1), since));
+        assertEquals(2, parkingSpotIndex.getLowestAvailable(ParkingType.CAR));
+        assertEquals(4, parkingSpotIndex.getLowestAvailable(ParkingType.BIKE));
+    }
+
+    @Test
+    public void repairAddsAndRemovesSpots() {
+        long since = parkingSpotIndex.getClock();
+        List<ParkingSpot> parkingSpots = Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.BIKE, true),
+                new ParkingSpot(4, ParkingType.BIKE, true),
+                new ParkingSpot(6, ParkingType.CAR, false));
+
+        Set<Integer> drifted = parkingSpotIndex.findDrift(parkingSpots, since);
+
+        assertEquals(3, parkingSpotIndex.repair(parkingSpots, drifted, since));
+        assertEquals(3, parkingSpotIndex.getNbSpots(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.getNbAvailable(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.getNbSpots(ParkingType.BIKE));
+        assertEquals(3, parkingSpotIndex.getLowestAvailable(ParkingType.BIKE));
+    }
+
+    @Test
+    public void repairKeepsPolledSpots() {
+        long since = parkingSpotIndex.getClock();
+        List<ParkingSpot> parkingSpots = lot(true, true, true, true, true);
+        assertEquals(1, parkingSpotIndex.pollLowestAvailable(ParkingType.CAR));
+
+        assertEquals(0, parkingSpotIndex.repair(parkingSpots, Collections.singleton(1), since));
+
+        assertEquals(2, parkingSpotIndex.getLowestAvailable(ParkingType.CAR));
+        assertEquals(2, parkingSpotIndex.getNbAvailable(ParkingType.CAR));
+    }
+}
@@ -0,0 +1,74 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.RecurringVehicleCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecurringVehicleCacheTest {
+
+    private static final String VEH_REG = "AB-123-CD";
+
+    @Test
+    public void lookupsAreCountedAsHitsAndMisses() {
+        RecurringVehicleCache cache = new RecurringVehicleCache(1024 * 1024, 60000);
+
+        assertNull(cache.get(VEH_REG));
+        cache.put(VEH_REG, 2);
+
+        assertEquals(Integer.valueOf(2), cache.get(VEH_REG));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio());
+    }
+
+    @Test
+    public void closedTicketIncrementsCachedCountInPlace() {
+        RecurringVehicleCache cache = new RecurringVehicleCache(1024 * 1024, 60000);
+        cache.put(VEH_REG, 0);
+
+        cache.incrementIfPresent(VEH_REG);
+        cache.incrementIfPresent("ZZ-999-ZZ");
+
+        assertEquals(Integer.valueOf(1), cache.get(VEH_REG));
+        assertNull(cache.get("ZZ-999-ZZ"));
+    }
+
+    @Test
+    public void staleDatabaseCountDoesNotOverwriteAnIncrement() {
+        RecurringVehicleCache cache = new RecurringVehicleCache(1024 * 1024, 60000);
+        cache.put(VEH_REG, 1);
+        cache.incrementIfPresent(VEH_REG);
+
+        // read from the database before the visit was committed
+        cache.put(VEH_REG, 1);
+
+        assertEquals(Integer.valueOf(2), cache.get(VEH_REG));
+        cache.put(VEH_REG, 3);
+        assertEquals(Integer.valueOf(3), cache.get(VEH_REG));
+    }
+
+    @Test
+    public void expiredEntryIsAMiss() {
+        RecurringVehicleCache cache = new RecurringVehicleCache(1024 * 1024, -1);
+        cache.put(VEH_REG, 3);
+
+        assertNull(cache.get(VEH_REG));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void memoryBudgetBoundsTheNumberOfEntries() {
+        int maxEntries = 16 * 10;
+        RecurringVehicleCache cache = new RecurringVehicleCache(maxEntries * RecurringVehicleCache.ESTIMATED_ENTRY_BYTES, 60000);
+
+        for (int i = 0; i < 10000; i++) {
+            cache.put("AA-" + i, i);
+        }
+
+        assertTrue(cache.size() <= maxEntries);
+        assertEquals(10000 - cache.size(), cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.ReportService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.StringWriter;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ReportServiceTest {
+
+    // 2024-01-01 00:00 UTC, report over four hours
+    private static final long FROM = 1704067200000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long TO = FROM + 4 * HOUR;
+
+    @Mock
+    private TicketDAO ticketDAO;
+    @Mock
+    private ParkingSpotDAO parkingSpotDAO;
+
+    @Test
+    public void ticketsAreAggregatedPerHourTypeAndSpot() throws Exception {
+        when(parkingSpotDAO.getAllParkingSpots()).thenReturn(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.BIKE, true)));
+        doAnswer(invocation -> {
+            TicketDAO.TicketRowHandler handler = invocation.getArgument(3);
+            // parked since before the period, left at 01:30
+            handler.onTicket(1, ParkingType.CAR, FROM - HOUR, FROM + 90 * 60 * 1000, 3.75);
+            // 00:30 to 03:00
+            handler.onTicket(2, ParkingType.CAR, FROM + 30 * 60 * 1000, FROM + 3 * HOUR, 3.75);
+            // 02:00, still parked after the period
+            handler.onTicket(1, ParkingType.CAR, FROM + 2 * HOUR, -1, 0);
+            // 01:00 to 02:00
+            handler.onTicket(3, ParkingType.BIKE, FROM + HOUR, FROM + 2 * HOUR, 1.0);
+            return null;
+        }).when(ticketDAO).forEachTicketInPeriod(eq(FROM), eq(TO), anyInt(), any(TicketDAO.TicketRowHandler.class));
+
+        ReportService.Report report = new ReportService(ticketDAO, parkingSpotDAO, 100).buildReport(FROM, TO);
+
+        assertEquals(4, report.getNbTickets());
+        assertArrayEquals(new double[]{1.5, 1.5, 2.0, 1.0}, report.getAverageOccupiedSpots(ParkingType.CAR));
+        assertArrayEquals(new double[]{0, 1.0, 0, 0}, report.getAverageOccupiedSpots(ParkingType.BIKE));
+        assertEquals(2, report.getCapacity(ParkingType.CAR));
+        assertEquals(7.5, report.getRevenue(ParkingType.CAR));
+        assertEquals(2, report.getNbPaidTickets(ParkingType.CAR));
+        assertEquals(1, report.getVehicles(1));
+        assertEquals(3.5, report.getOccupiedHours(1));
+        assertEquals(2.5, report.getOccupiedHours(2));
+
+        StringWriter occupancy = new StringWriter();
+        report.writeOccupancyCsv(occupancy, ZoneOffset.UTC);
+        assertTrue(occupancy.toString().contains("2024-01-01T02:00,CAR,2.000,2,1.0000\n"));
+        StringWriter turnover = new StringWriter();
+        report.writeTurnoverCsv(turnover);
+        assertEquals("parking_number,type,vehicles,occupied_hours\n1,CAR,1,3.50\n2,CAR,1,2.50\n3,BIKE,1,1.00\n", turnover.toString());
+    }
+}
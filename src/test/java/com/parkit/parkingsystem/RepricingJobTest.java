@@ -0,0 +1,101 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.RepricingJob;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class RepricingJobTest {
+
+    private static final long IN = 1704067200000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Mock
+    private TicketDAO ticketDAO;
+
+    private Path checkpointFile;
+    private RepricingJob repricingJob;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        checkpointFile = Files.createTempFile("reprice", ".checkpoint");
+        Files.delete(checkpointFile);
+        FareCalculatorService fareCalculatorService = new FareCalculatorService(new TariffEngine(), TariffEngine.DEFAULT_LOT);
+        repricingJob = new RepricingJob(ticketDAO, fareCalculatorService, checkpointFile, 2, 100, 2);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    @Test
+    public void onlyChangedPricesAreWrittenBack() throws Exception {
+        when(ticketDAO.countClosedTickets(1, 100)).thenReturn(3L);
+        doAnswer(invocation -> {
+            TicketDAO.ClosedTicketHandler handler = invocation.getArgument(3);
+            handler.onTicket(1, IN, IN + HOUR, ParkingType.CAR, false, 1.5);
+            handler.onTicket(2, IN, IN + 2 * HOUR, ParkingType.CAR, true, 0);
+            handler.onTicket(3, IN + HOUR, IN, ParkingType.BIKE, false, 0);
+            return null;
+        }).when(ticketDAO).forEachClosedTicket(eq(1), eq(100), eq(100), any(TicketDAO.ClosedTicketHandler.class));
+
+        RepricingJob.Report report = repricingJob.run(1, 100);
+
+        ArgumentCaptor<int[]> ids = ArgumentCaptor.forClass(int[].class);
+        ArgumentCaptor<double[]> prices = ArgumentCaptor.forClass(double[].class);
+        verify(ticketDAO).updatePrices(ids.capture(), prices.capture(), eq(1));
+        assertEquals(2, ids.getValue()[0]);
+        assertEquals(3.0 * 0.95, prices.getValue()[0]);
+        assertEquals(3, report.getProcessed());
+        assertEquals(1, report.getChanged());
+        assertEquals(1, report.getFailed());
+        assertEquals(3, report.getLastId());
+        assertFalse(Files.exists(checkpointFile), "A completed run removes its checkpoint");
+    }
+
+    @Test
+    public void runResumesAfterTheCheckpoint() throws Exception {
+        Files.write(checkpointFile, "1,100,41".getBytes(StandardCharsets.UTF_8));
+        when(ticketDAO.countClosedTickets(42, 100)).thenReturn(0L);
+
+        RepricingJob.Report report = repricingJob.run(1, 100);
+
+        verify(ticketDAO).forEachClosedTicket(eq(42), eq(100), anyInt(), any(TicketDAO.ClosedTicketHandler.class));
+        verify(ticketDAO, never()).updatePrices(any(int[].class), any(double[].class), anyInt());
+        assertEquals(0, report.getProcessed());
+    }
+
+    @Test
+    public void checkpointOfAnotherRangeIsIgnored() throws Exception {
+        Files.write(checkpointFile, "1,50,41".getBytes(StandardCharsets.UTF_8));
+        when(ticketDAO.countClosedTickets(1, 100)).thenReturn(0L);
+
+        repricingJob.run(1, 100);
+
+        verify(ticketDAO).forEachClosedTicket(eq(1), eq(100), anyInt(), any(TicketDAO.ClosedTicketHandler.class));
+    }
+}
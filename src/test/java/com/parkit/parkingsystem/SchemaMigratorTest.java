@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SchemaMigratorTest {
+
+    @Mock
+    private DataBaseConfig dataBaseConfig;
+    @Mock
+    private Connection connection;
+    @Mock
+    private Statement statement;
+    @Mock
+    private ResultSet resultSet;
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    private List<String> executed;
+    private SchemaMigrator schemaMigrator;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        executed = new ArrayList<>();
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery("select VERSION from schema_version")).thenReturn(resultSet);
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.contains("TICKET_VEHICLE_OPEN") && executed.contains("fail")) {
+                throw new SQLException("Duplicate key name");
+            }
+            executed.add(sql);
+            return false;
+        }).when(statement).execute(anyString());
+        schemaMigrator = new SchemaMigrator(dataBaseConfig);
+    }
+
+    @Test
+    public void newDatabaseRunsEveryScript() throws Exception {
+        when(resultSet.next()).thenReturn(false);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        assertEquals(6, schemaMigrator.migrate());
+
+        assertTrue(executed.get(0).startsWith("create table if not exists schema_version"));
+        assertTrue(executed.contains("create index TICKET_VEHICLE_OPEN on ticket(VEHICLE_REG_NUMBER, OUT_TIME, IN_TIME)"));
+        verify(preparedStatement).setInt(1, 1);
+        verify(preparedStatement).setInt(1, 2);
+        verify(preparedStatement).setInt(1, 3);
+        verify(preparedStatement).setInt(1, 4);
+        verify(preparedStatement).setInt(1, 5);
+        verify(preparedStatement).setInt(1, 6);
+        verify(preparedStatement, times(6)).execute();
+        verify(dataBaseConfig).closeConnection(connection);
+    }
+
+    @Test
+    public void upToDateDatabaseRunsNothing() throws Exception {
+        when(resultSet.next()).thenReturn(true, true, true, true, true, true, false);
+        when(resultSet.getInt(1)).thenReturn(1, 2, 3, 4, 5, 6);
+
+        assertEquals(0, schemaMigrator.migrate());
+
+        assertEquals(1, executed.size());
+        verify(connection, never()).prepareStatement(anyString());
+    }
+
+    @Test
+    public void failingScriptStopsTheMigration() throws Exception {
+        executed.add("fail");
+        when(resultSet.next()).thenReturn(false);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        assertEquals(-1, schemaMigrator.migrate());
+
+        verify(preparedStatement).setInt(1, 1);
+        verify(preparedStatement, never()).setInt(1, 2);
+        verify(dataBaseConfig).closeConnection(connection);
+    }
+}
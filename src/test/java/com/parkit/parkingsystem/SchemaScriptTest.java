@@ -0,0 +1,18 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SchemaScriptTest {
+
+    @Test
+    public void splitStatementsDropsComments() {
+        String script = "/* first\n table */\ncreate table a(ID int);\n\n-- second; table\ncreate table b(ID int)\n;\n";
+
+        assertEquals(Arrays.asList("create table a(ID int)", "create table b(ID int)"), SchemaMigrator.splitStatements(script));
+    }
+}
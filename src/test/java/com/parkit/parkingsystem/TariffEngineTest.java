@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TariffEngineTest {
+
+    // Monday 2024-01-01 00:00 UTC
+    private static final long MONDAY = 1704067200000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static Properties rules() {
+        Properties properties = new Properties();
+        properties.setProperty("timeZone", "UTC");
+        properties.setProperty("default.CAR.rate", "1");
+        properties.setProperty("default.CAR.bands", "MON-FRI 08:00-18:00@3");
+        properties.setProperty("default.CAR.freeMinutes", "0");
+        properties.setProperty("default.BIKE.rate", "2");
+        properties.setProperty("default.BIKE.dailyCap", "10");
+        properties.setProperty("airport.CAR.rate", "4");
+        return properties;
+    }
+
+    @Test
+    public void builtInTariffsMatchTheFareConstants() {
+        TariffEngine tariffEngine = new TariffEngine();
+
+        assertEquals(2 * Fare.CAR_RATE_PER_HOUR, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR, MONDAY, MONDAY + 2 * HOUR, false));
+        assertEquals(Fare.BIKE_RATE_PER_HOUR * 0.95, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.BIKE, MONDAY, MONDAY + HOUR, true));
+        assertEquals(0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR, MONDAY, MONDAY + 29 * 60 * 1000, false));
+    }
+
+    @Test
+    public void timeOfDayBandsArePricedPerMinute() {
+        TariffEngine tariffEngine = new TariffEngine(rules());
+
+        // 07:00-08:00 at the base rate, 08:00-09:00 in the day band
+        assertEquals(4.0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR, MONDAY + 7 * HOUR, MONDAY + 9 * HOUR, false));
+        // a whole week: 5 days of 10h at 3 and 14h at 1, plus a weekend at 1
+        assertEquals(268.0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR, MONDAY, MONDAY + 7 * 24 * HOUR, false));
+        // two weeks starting Friday 17:00, then Friday 17:00 to Saturday 01:00
+        assertEquals(546.0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR,
+                MONDAY + 4 * 24 * HOUR + 17 * HOUR, MONDAY + 18 * 24 * HOUR + 25 * HOUR, false));
+    }
+
+    @Test
+    public void dailyCapAppliesPerCalendarDay() {
+        TariffEngine tariffEngine = new TariffEngine(rules());
+
+        assertEquals(4.0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.BIKE, MONDAY + HOUR, MONDAY + 3 * HOUR, false));
+        // Monday 20:00 to Tuesday 02:00: 4h then 2h, both under the cap
+        assertEquals(12.0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.BIKE, MONDAY + 20 * HOUR, MONDAY + 26 * HOUR, false));
+        // Monday 00:00 to Wednesday 12:00: three capped days
+        assertEquals(30.0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.BIKE, MONDAY, MONDAY + 60 * HOUR, false));
+    }
+
+    @Test
+    public void lotWithoutTariffForATypeFallsBackToTheDefaultLot() {
+        TariffEngine tariffEngine = new TariffEngine(rules());
+
+        assertEquals(4.0, tariffEngine.price("airport", ParkingType.CAR, MONDAY, MONDAY + HOUR, false));
+        assertEquals(2.0, tariffEngine.price("airport", ParkingType.BIKE, MONDAY, MONDAY + HOUR, false));
+        assertEquals(1.0, tariffEngine.price("unknown", ParkingType.CAR, MONDAY, MONDAY + HOUR, false));
+    }
+
+    @Test
+    public void invalidRulesKeepTheCurrentTariffs() {
+        TariffEngine tariffEngine = new TariffEngine(rules());
+        Properties invalid = rules();
+        invalid.setProperty("default.CAR.bands", "MON-FRI 08:00-25:00@3");
+
+        assertThrows(IllegalArgumentException.class, () -> tariffEngine.load(invalid));
+        assertEquals(1.0, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR, MONDAY, MONDAY + HOUR, false));
+    }
+
+    @Test
+    public void reloadSwapsTariffsFromFile() throws Exception {
+        Path file = Files.createTempFile("tariffs", ".properties");
+        try {
+            TariffEngine tariffEngine = new TariffEngine();
+
+            Files.write(file, "timeZone=UTC\ndefault.CAR.rate=2.5\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(tariffEngine.reload(file));
+            assertEquals(2.5, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR, MONDAY, MONDAY + HOUR, false));
+
+            Files.write(file, "default.CAR.rate=abc\n".getBytes(StandardCharsets.UTF_8));
+            assertFalse(tariffEngine.reload(file));
+            assertEquals(2.5, tariffEngine.price(TariffEngine.DEFAULT_LOT, ParkingType.CAR, MONDAY, MONDAY + HOUR, false));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
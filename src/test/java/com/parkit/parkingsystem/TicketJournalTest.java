@@ -0,0 +1,238 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLDataException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TicketJournalTest {
+
+    private static final long IN = 1704067200000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private Path file;
+    private Path deadLetterFile;
+    private List<TicketJournal.Record> applied;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        file = Files.createTempFile("tickets", ".journal");
+        deadLetterFile = file.resolveSibling(file.getFileName() + ".dead");
+        applied = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(deadLetterFile);
+    }
+
+    @Test
+    public void recordsAfterTheCheckpointAreRecovered() throws Exception {
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            assertEquals(1, journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN).getSeq());
+            journal.appendEntry("GHIJKL", ParkingType.BIKE, 4, IN);
+            journal.appendExit("ABCDEF", ParkingType.CAR, 1, IN, IN + HOUR, 1.5);
+        }
+
+        // the first record reached the database before the crash
+        try (TicketJournal journal = TicketJournal.open(file, 1, Long.MAX_VALUE)) {
+            assertEquals(2, journal.recover(applied::addAll, 10));
+            assertEquals(0, journal.getPendingCount());
+            assertEquals(3, journal.getAppliedSeq());
+            assertEquals(4, journal.appendEntry("MNOPQR", ParkingType.CAR, 2, IN).getSeq());
+        }
+
+        TicketJournal.Record entry = applied.get(0);
+        assertEquals(2, entry.getSeq());
+        assertTrue(entry.isEntry());
+        assertEquals("GHIJKL", entry.getVehicleRegNumber());
+        assertEquals(ParkingType.BIKE, entry.getParkingType());
+        assertEquals(4, entry.getParkingNumber());
+        assertEquals(TicketJournal.Record.NO_OUT_TIME, entry.getOutMillis());
+        TicketJournal.Record exit = applied.get(1);
+        assertEquals(TicketJournal.Record.EXIT, exit.getKind());
+        assertEquals(IN, exit.getInMillis());
+        assertEquals(IN + HOUR, exit.getOutMillis());
+        assertEquals(1.5, exit.getPrice());
+    }
+
+    @Test
+    public void tornRecordIsCutFromTheEnd() throws Exception {
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN);
+            journal.appendEntry("GHIJKL", ParkingType.CAR, 2, IN);
+        }
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            assertEquals(1, journal.getPendingCount());
+            assertEquals(size / 2, Files.size(file));
+            assertEquals(2, journal.appendEntry("GHIJKL", ParkingType.CAR, 2, IN).getSeq());
+        }
+    }
+
+    @Test
+    public void concurrentAppendsAreAllDurable() throws Exception {
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            List<Future<TicketJournal.Record>> appends = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int parkingNumber = i;
+                appends.add(gates.submit(() -> journal.appendEntry("P" + parkingNumber, ParkingType.CAR, parkingNumber, IN)));
+            }
+            for (Future<TicketJournal.Record> append : appends) {
+                append.get();
+            }
+        } finally {
+            gates.shutdown();
+        }
+
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            List<TicketJournal.Record> records = journal.getPendingRecords();
+            assertEquals(200, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(i + 1, records.get(i).getSeq());
+            }
+        }
+    }
+
+    @Test
+    public void flushedJournalIsEmptiedPastMaxBytes() throws Exception {
+        try (TicketJournal journal = TicketJournal.open(file, 0, 10)) {
+            journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN);
+            journal.appendEntry("GHIJKL", ParkingType.CAR, 2, IN);
+
+            assertEquals(1, journal.flush(applied::addAll, 1));
+            assertTrue(Files.size(file) > 0);
+            assertEquals(1, journal.flush(applied::addAll, 1));
+            assertEquals(0, Files.size(file));
+            assertEquals(2, journal.getAppliedSeq());
+            assertEquals(3, journal.appendEntry("MNOPQR", ParkingType.CAR, 3, IN).getSeq());
+        }
+    }
+
+    @Test
+    public void failedFlushKeepsTheRecords() throws Exception {
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN);
+
+            assertThrows(IllegalStateException.class, () -> journal.flush(records -> {
+                throw new IllegalStateException("database down");
+            }, 10));
+
+            assertEquals(1, journal.getPendingCount());
+            assertEquals(1, journal.flush(applied::addAll, 10));
+            assertEquals(1, applied.size());
+        }
+    }
+
+    @Test
+    public void rejectedRecordIsSetAsideAndSkippedOnRestart() throws Exception {
+        TicketJournal.Sink sink = records -> {
+            for (TicketJournal.Record record : records) {
+                if (record.getVehicleRegNumber().equals("GHIJKL")) {
+                    throw new SQLDataException("Value too long for column VEHICLE_REG_NUMBER", "22001");
+                }
+            }
+            applied.addAll(records);
+        };
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN);
+            journal.appendEntry("GHIJKL", ParkingType.CAR, 2, IN);
+
+            assertEquals(2, journal.flush(sink, 10));
+            assertEquals(1, applied.size());
+            assertEquals(2, journal.getAppliedSeq());
+            journal.appendEntry("MNOPQR", ParkingType.CAR, 3, IN);
+        }
+        assertTrue(new String(Files.readAllBytes(deadLetterFile), StandardCharsets.UTF_8).startsWith("2\tENTRY\tGHIJKL\t"));
+
+        // the database holds record 1 only: the rejected record is not handed again
+        applied.clear();
+        try (TicketJournal journal = TicketJournal.open(file, 1, Long.MAX_VALUE)) {
+            assertEquals(1, journal.recover(sink, 10));
+            assertEquals(3, applied.get(0).getSeq());
+        }
+    }
+
+    @Test
+    public void appendOfAPlateLongerThanTheColumnFails() throws Exception {
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            assertThrows(IllegalArgumentException.class, () -> journal.appendEntry("ABCDEFGHIJK", ParkingType.CAR, 1, IN));
+            assertEquals(0, journal.getPendingCount());
+        }
+    }
+
+    @Test
+    public void recordsAfterTheSnapshotAreKeptEvenOnceApplied() throws Exception {
+        try (TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE)) {
+            journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN);
+            journal.appendEntry("GHIJKL", ParkingType.CAR, 2, IN);
+            journal.appendExit("ABCDEF", ParkingType.CAR, 1, IN, IN + HOUR, 1.5);
+        }
+
+        // snapshot taken after the first record, database up to date with the second
+        try (TicketJournal journal = TicketJournal.open(file, 2, Long.MAX_VALUE, 1)) {
+            List<TicketJournal.Record> records = journal.takeRecordsAfterSnapshot();
+            assertEquals(2, records.size());
+            assertEquals(2, records.get(0).getSeq());
+            assertEquals(3, records.get(1).getSeq());
+            assertEquals(1, journal.getPendingCount());
+            assertEquals(3, journal.getLastSeq());
+            assertNull(journal.takeRecordsAfterSnapshot());
+        }
+    }
+
+    @Test
+    public void snapshotOlderThanTheJournalIsRefused() throws Exception {
+        try (TicketJournal journal = TicketJournal.open(file, 0, 10)) {
+            journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN);
+            journal.appendEntry("GHIJKL", ParkingType.CAR, 2, IN);
+            journal.flush(applied::addAll, 10);
+            journal.appendEntry("MNOPQR", ParkingType.CAR, 3, IN);
+        }
+
+        // the file was emptied after record 2: records 1 and 2 are gone
+        try (TicketJournal journal = TicketJournal.open(file, 2, 10, 1)) {
+            assertNull(journal.takeRecordsAfterSnapshot());
+        }
+        try (TicketJournal journal = TicketJournal.open(file, 2, 10, 2)) {
+            assertEquals(1, journal.takeRecordsAfterSnapshot().size());
+        }
+        // a snapshot ahead of the journal belongs to another journal file
+        try (TicketJournal journal = TicketJournal.open(file, 2, 10, 9)) {
+            assertNull(journal.takeRecordsAfterSnapshot());
+        }
+    }
+
+    @Test
+    public void appendAfterCloseFails() throws Exception {
+        TicketJournal journal = TicketJournal.open(file, 0, Long.MAX_VALUE);
+        journal.close();
+
+        assertThrows(IOException.class, () -> journal.appendEntry("ABCDEF", ParkingType.CAR, 1, IN));
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketStore;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TicketStoreTest {
+
+    private static final long IN = 1704067200000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private TicketStore ticketStore;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        ticketStore = new TicketStore(16);
+    }
+
+    @Test
+    public void rowsReadBackAndPlatesAreStoredOnce() {
+        for (int i = 0; i < 100; i++) {
+            ticketStore.add(i + 1, 1 + i % 5, i % 5 < 3 ? ParkingType.CAR : ParkingType.BIKE, new String("AB-" + (i % 10)),
+                    0, IN + i * HOUR, i < 90 ? IN + (i + 1) * HOUR : TicketStore.NO_OUT_TIME, i / 10);
+        }
+
+        assertEquals(100, ticketStore.size());
+        assertEquals(10, ticketStore.getNbPlates());
+        assertEquals(42, ticketStore.getId(41));
+        assertEquals(ParkingType.BIKE, ticketStore.getParkingType(43));
+        assertEquals("AB-1", ticketStore.getVehicleRegNumber(41));
+        assertEquals(ticketStore.getPlateCode(1), ticketStore.getPlateCode(41));
+        assertSame(ticketStore.getVehicleRegNumber(1), ticketStore.getVehicleRegNumber(41));
+        assertEquals(IN + 42 * HOUR, ticketStore.getOutMillis(41));
+        assertEquals(TicketStore.NO_OUT_TIME, ticketStore.getOutMillis(95));
+        assertEquals(4, ticketStore.getNbPreviousTickets(41));
+        assertThrows(IndexOutOfBoundsException.class, () -> ticketStore.getId(100));
+    }
+
+    @Test
+    public void viewReadsAndWritesItsRow() {
+        Ticket ticket = new Ticket();
+        ticket.setId(7);
+        ticket.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date(IN));
+        int row = ticketStore.add(ticket);
+        ticketStore.add(8, 4, ParkingType.BIKE, "GHIJKL", 0, IN, IN + HOUR, 2);
+
+        TicketStore.TicketView view = ticketStore.view(row);
+        assertEquals(7, view.getId());
+        assertEquals(new ParkingSpot(3, ParkingType.CAR, false), view.getParkingSpot());
+        assertEquals(IN, view.getInTime().getTime());
+        assertNull(view.getOutTime());
+
+        view.setOutTime(new Date(IN + 2 * HOUR));
+        new FareCalculatorService(new TariffEngine(), TariffEngine.DEFAULT_LOT).calculateFare(view, false);
+        assertEquals(IN + 2 * HOUR, ticketStore.getOutMillis(row));
+        assertEquals(3.0, ticketStore.getPrice(row));
+
+        view.moveTo(row + 1);
+        assertEquals("GHIJKL", view.getVehicleRegNumber());
+        assertEquals(ParkingType.BIKE, view.getParkingSpot().getParkingType());
+        assertEquals(2, view.getNbPreviousTickets());
+    }
+}
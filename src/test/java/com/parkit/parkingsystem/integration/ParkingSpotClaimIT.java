@@ -0,0 +1,83 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Several entry gates claiming CAR spots at the same time, each with its own DAO as separate terminals would.
+ * A spot handed out twice before being released is a double allocation.
+ */
+public class ParkingSpotClaimIT {
+
+    private static final long RUN_MILLIS = 2000;
+
+    private DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @Test
+    public void concurrentGatesNeverShareASpot() throws Exception {
+        for (int nbGates : new int[]{1, 2, 4, 8}) {
+            ConcurrentMap<Integer, Integer> occupiedBy = new ConcurrentHashMap<>();
+            AtomicInteger doubleAllocations = new AtomicInteger();
+            AtomicLong claims = new AtomicLong();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> gates = new ArrayList<>();
+
+            for (int gate = 0; gate < nbGates; gate++) {
+                final int gateId = gate;
+                ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+                parkingSpotDAO.dataBaseConfig = new DataBaseTestConfig();
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long end = System.currentTimeMillis() + RUN_MILLIS;
+                    while (System.currentTimeMillis() < end) {
+                        int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+                        if (parkingNumber <= 0) {
+                            continue;
+                        }
+                        claims.incrementAndGet();
+                        if (occupiedBy.putIfAbsent(parkingNumber, gateId) != null) {
+                            doubleAllocations.incrementAndGet();
+                        }
+                        occupiedBy.remove(parkingNumber, gateId);
+                        parkingSpotDAO.updateParking(new ParkingSpot(parkingNumber, ParkingType.CAR, true));
+                    }
+                });
+                gates.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread gate : gates) {
+                gate.join();
+            }
+
+            System.out.println(nbGates + " gate(s): " + claims.get() * 1000 / RUN_MILLIS + " claims/s");
+            assertEquals(0, doubleAllocations.get(), "A parking spot was allocated twice with " + nbGates + " gates");
+            assertTrue(claims.get() > 0, "No spot could be claimed with " + nbGates + " gates");
+        }
+    }
+}
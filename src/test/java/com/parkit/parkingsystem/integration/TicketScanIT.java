@@ -0,0 +1,122 @@
+package com.parkit.parkingsystem.integration;
+
+import com.mysql.cj.jdbc.result.ResultSetImpl;
+import com.mysql.cj.protocol.a.result.ResultsetRowsCursor;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * The report and repricing scans must read their rows as they go, not load the whole result set, and a
+ * chunk of closed tickets must still know which vehicles had parked before it.
+ */
+public class TicketScanIT {
+
+    private static final long IN = 1704067200000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+    private ScanTestConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+        dataBaseConfig = new ScanTestConfig();
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        // three visits of the same vehicle, then one of another vehicle
+        for (int i = 0; i < 3; i++) {
+            saveClosedTicket("AB-123-CD", IN + i * 2 * HOUR);
+        }
+        saveClosedTicket("EF-456-GH", IN);
+    }
+
+    private void saveClosedTicket(String vehicleRegNumber, long inMillis) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inMillis));
+        ticket.setOutTime(new Date(inMillis + HOUR));
+        ticket.setPrice(1.5);
+        ticketDAO.saveTicket(ticket);
+    }
+
+    @Test
+    public void periodScanStreamsFromMySql() throws Exception {
+        assumeFalse(DataBaseConfig.isEmbeddedBackend(), "only MySQL has a cursor fetch");
+        AtomicInteger rows = new AtomicInteger();
+
+        ticketDAO.forEachTicketInPeriod(IN, IN + 24 * HOUR, 1, (parkingNumber, parkingType, inMillis, outMillis, price) -> rows.incrementAndGet());
+
+        assertEquals(4, rows.get());
+        assertTrue(dataBaseConfig.lastResultSetStreamed, "the rows must be fetched through a server cursor");
+    }
+
+    @Test
+    public void closedTicketScanStreamsFromMySql() throws Exception {
+        assumeFalse(DataBaseConfig.isEmbeddedBackend(), "only MySQL has a cursor fetch");
+        AtomicInteger rows = new AtomicInteger();
+
+        ticketDAO.forEachClosedTicket(1, Integer.MAX_VALUE, 1, (id, inMillis, outMillis, parkingType, recurring, price) -> rows.incrementAndGet());
+
+        assertEquals(4, rows.get());
+        assertTrue(dataBaseConfig.lastResultSetStreamed, "the rows must be fetched through a server cursor");
+    }
+
+    @Test
+    public void closedTicketsOfARangeSeeTheVisitsBeforeIt() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        ticketDAO.forEachClosedTicket(1, Integer.MAX_VALUE, 100, (id, inMillis, outMillis, parkingType, recurring, price) -> ids.add(id));
+        Map<Integer, Boolean> recurringById = new HashMap<>();
+
+        // the range leaves out the first visit of the vehicle
+        ticketDAO.forEachClosedTicket(ids.get(1), ids.get(3), 100, (id, inMillis, outMillis, parkingType, recurring, price) -> recurringById.put(id, recurring));
+
+        assertEquals(3, recurringById.size());
+        assertTrue(recurringById.get(ids.get(1)));
+        assertTrue(recurringById.get(ids.get(2)));
+        assertFalse(recurringById.get(ids.get(3)));
+    }
+
+    /**
+     * Looks at the result sets the DAO closes: a MySQL one read through a server cursor holds
+     * {@link ResultsetRowsCursor} rows.
+     */
+    private static final class ScanTestConfig extends DataBaseTestConfig {
+        private boolean lastResultSetStreamed;
+
+        @Override
+        public void closeResultSet(ResultSet rs) {
+            if (rs != null) {
+                try {
+                    lastResultSetStreamed = rs.isWrapperFor(ResultSetImpl.class)
+                            && rs.unwrap(ResultSetImpl.class).getRows() instanceof ResultsetRowsCursor;
+                } catch (SQLException e) {
+                    lastResultSetStreamed = false;
+                }
+            }
+            super.closeResultSet(rs);
+        }
+    }
+}
@@ -10,11 +10,22 @@ public class DataBaseTestConfig extends DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseTestConfig");
 
+    // with -Dparkit.db.backend=embedded the integration tests run on an in-memory H2 database, without MySQL
+    private static final boolean EMBEDDED = DataBaseConfig.isEmbeddedBackend();
+    private static final String URL = EMBEDDED
+            ? "jdbc:h2:mem:test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+            : "jdbc:mysql://localhost:3306/test?serverTimezone=Europe/Paris&useCursorFetch=true";
+    private static final String USER = EMBEDDED ? "sa" : "root";
+    private static final String PASSWORD = EMBEDDED ? "" : "eeo560";
+
+    public DataBaseTestConfig() {
+        super(URL, USER, PASSWORD);
+    }
+
     public Connection getConnection() throws ClassNotFoundException, SQLException {
         logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/test?serverTimezone=Europe/Paris","root","eeo560");
+        Class.forName(getDriverClassName(URL));
+        return DriverManager.getConnection(URL, USER, PASSWORD);
     }
 
     public void closeConnection(Connection con){
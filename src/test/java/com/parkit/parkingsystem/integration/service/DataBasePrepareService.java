@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.integration.service;
 
+import com.parkit.parkingsystem.config.SchemaMigrator;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 
 import java.sql.Connection;
@@ -9,6 +10,8 @@ public class DataBasePrepareService {
     DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
 
     public void clearDataBaseEntries(){
+        new SchemaMigrator(dataBaseTestConfig).migrate();
+
         Connection connection = null;
         try{
             connection = dataBaseTestConfig.getConnection();
@@ -17,6 +20,8 @@ public class DataBasePrepareService {
 
             connection.prepareStatement("truncate table ticket").execute();
 
+            connection.prepareStatement("truncate table vehicle_visit").execute();
+
         }catch(Exception e){
             e.printStackTrace();
         }finally {